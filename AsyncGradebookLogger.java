@@ -0,0 +1,101 @@
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints gradebook events from a background thread
+ * Messages are formatted as ConsoleGradebookListener does and appended to a
+ * buffer; a daemon thread writes the buffer to the stream in one call every
+ * few milliseconds, or sooner once it grows large, so a bulk load never
+ * waits on the console.
+ */
+public class AsyncGradebookLogger extends ConsoleGradebookListener implements AutoCloseable {
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 50;
+    public static final int DEFAULT_BUFFER_LIMIT = 1 << 16;
+    
+    private final PrintStream out;
+    private final int bufferLimit;
+    private final String lineSeparator;
+    private StringBuilder pending;
+    private final ScheduledExecutorService flusher;
+    
+    /**
+     * Constructor for an AsyncGradebookLogger that writes to System.out
+     */
+    public AsyncGradebookLogger() {
+        this(System.out, DEFAULT_FLUSH_DELAY_MILLIS, DEFAULT_BUFFER_LIMIT);
+    }
+    
+    /**
+     * Constructor for an AsyncGradebookLogger
+     * @param out The stream to write to
+     * @param flushDelayMillis Longest time a message waits before it is written
+     * @param bufferLimit Number of buffered characters that triggers a write right away
+     */
+    public AsyncGradebookLogger(PrintStream out, long flushDelayMillis, int bufferLimit) {
+        this.out = out;
+        this.bufferLimit = bufferLimit;
+        this.lineSeparator = System.lineSeparator();
+        this.pending = new StringBuilder();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gradebook-logger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, flushDelayMillis, flushDelayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Buffer one message line, handing a full buffer to the background thread
+     * @param line The message
+     */
+    @Override
+    protected void print(String line) {
+        boolean full;
+        synchronized (this) {
+            pending.append(line).append(lineSeparator);
+            full = pending.length() >= bufferLimit;
+        }
+        if (full) {
+            if (flusher.isShutdown()) {
+                flush();
+            } else {
+                flusher.execute(this::flush);
+            }
+        }
+    }
+    
+    /**
+     * Write every buffered message to the stream
+     */
+    public void flush() {
+        StringBuilder batch;
+        synchronized (this) {
+            if (pending.length() == 0) {
+                return;
+            }
+            batch = pending;
+            pending = new StringBuilder(batch.capacity());
+        }
+        synchronized (out) {
+            out.print(batch);
+            out.flush();
+        }
+    }
+    
+    /**
+     * Stop the background thread and write any buffered messages
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background autosave for a gradebook
+ * A daemon thread checks the gradebook's change count a few times a second
+ * and saves a snapshot when enough changes are pending, or when changes have
+ * been pending for longer than the interval. Only the snapshot copy holds up
+ * grade entry; formatting and writing the file happen on the autosave thread.
+ */
+public class AutosaveService {
+    public static final long DEFAULT_INTERVAL_MILLIS = 30_000;
+    public static final int DEFAULT_DIRTY_THRESHOLD = 500;
+    
+    private static final long POLL_MILLIS = 200;
+    
+    private Gradebook gradebook;
+    private String filename;
+    private long intervalMillis;
+    private int dirtyThreshold;
+    private ScheduledExecutorService scheduler;
+    
+    // Snapshot buffer reused by every autosave, and the state of the last save
+    private GradebookSnapshot snapshot;
+    private volatile long savedChangeCount;
+    private volatile long lastSaveMillis;
+    
+    /**
+     * Constructor for an AutosaveService with the default triggers
+     * @param gradebook The gradebook to save
+     * @param filename The data file to save to, in the binary format if it ends in .gdb
+     */
+    public AutosaveService(Gradebook gradebook, String filename) {
+        this(gradebook, filename, DEFAULT_INTERVAL_MILLIS, DEFAULT_DIRTY_THRESHOLD);
+    }
+    
+    /**
+     * Constructor for an AutosaveService
+     * @param gradebook The gradebook to save
+     * @param filename The data file to save to
+     * @param intervalMillis Longest time changes stay unsaved
+     * @param dirtyThreshold Number of unsaved changes that triggers a save right away
+     */
+    public AutosaveService(Gradebook gradebook, String filename, long intervalMillis, int dirtyThreshold) {
+        this.gradebook = gradebook;
+        this.filename = filename;
+        this.intervalMillis = intervalMillis;
+        this.dirtyThreshold = Math.max(1, dirtyThreshold);
+        this.snapshot = new GradebookSnapshot();
+        this.savedChangeCount = gradebook.getChangeCount();
+    }
+    
+    /**
+     * Start checking for changes in the background
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        lastSaveMillis = System.currentTimeMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gradebook-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long poll = Math.min(POLL_MILLIS, Math.max(1, intervalMillis));
+        scheduler.scheduleWithFixedDelay(this::check, poll, poll, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stop autosaving, waiting for a save in progress to finish
+     */
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        try {
+            running.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Save now if there are unsaved changes
+     * @return true if the data file is up to date, false if the save failed
+     */
+    public boolean saveNow() {
+        return save();
+    }
+    
+    /**
+     * Get the number of changes made since the last autosave
+     * @return Number of unsaved changes
+     */
+    public long getUnsavedChangeCount() {
+        return gradebook.getChangeCount() - savedChangeCount;
+    }
+    
+    /**
+     * Save if either trigger has fired
+     */
+    private void check() {
+        long unsaved = getUnsavedChangeCount();
+        if (unsaved == 0) {
+            return;
+        }
+        if (unsaved >= dirtyThreshold || System.currentTimeMillis() - lastSaveMillis >= intervalMillis) {
+            save();
+        }
+    }
+    
+    /**
+     * Capture and write a snapshot if there are unsaved changes
+     * @return true if the data file is up to date, false if the save failed
+     */
+    private synchronized boolean save() {
+        if (getUnsavedChangeCount() == 0) {
+            return true;
+        }
+        try {
+            gradebook.writeSnapshot(snapshot, filename, BinaryGradebookFile.isBinaryFileName(filename));
+            savedChangeCount = snapshot.getChangeCount();
+            lastSaveMillis = System.currentTimeMillis();
+            return true;
+        } catch (IOException e) {
+            // Retried on the next trigger; the previous data file is still intact
+            lastSaveMillis = System.currentTimeMillis();
+            gradebook.getListener().error("Autosave to " + filename + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+}
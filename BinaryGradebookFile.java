@@ -0,0 +1,469 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Versioned binary persistence format for a Gradebook
+ *
+ * Layout (little-endian):
+ *   header        magic "GRDB", version, student count, flags,
+ *                 string table offset, grade blocks offset,
+ *                 and from version 2: directory offset, ID index offset,
+ *                 rank order offset, total grade count, sum of averages,
+ *                 and from version 3: symbol tables offset,
+ *                 and from version 4: last journal checkpoint
+ *   string table  per student: name length, UTF-8 name bytes
+ *   grade blocks  per student: ID, grade count, raw double grades,
+ *                 and from version 3 the subject and category ID of each grade
+ *   slot blocks   (version 3) per student: subject count, sum per subject,
+ *                 then category count, sum per category
+ *   directory     per student (version 2): ID, grade count, grade sum,
+ *                 name offset, grade block offset, and from version 3 the
+ *                 slot block offset (fixed 32- or 40-byte entries)
+ *   ID index      (version 2) ID and position pairs sorted by ID
+ *   rank order    (version 2) positions from the highest average down
+ *   symbol tables (version 3) subject names, category names, category weights
+ *
+ * Grades are stored as raw doubles, so nothing is lost to text formatting.
+ * Files are read and written through a FileChannel with a large direct buffer.
+ * The version 2 sections let GradebookArchive answer queries from a mapped
+ * file without loading it, and version 3 files are loaded lazily through it.
+ * Version 4 records which journal records the file already holds.
+ */
+public class BinaryGradebookFile {
+    /** "GRDB" as a big-endian int, so the file starts with those four ASCII bytes */
+    public static final int MAGIC = 0x47524442;
+    public static final int VERSION = 4;
+    public static final int HEADER_SIZE = 88;
+    public static final int DIRECTORY_ENTRY_SIZE = 40;
+    public static final int ID_INDEX_ENTRY_SIZE = 8;
+    public static final int SLOT_ENTRY_SIZE = 16;
+    
+    /** File name extension the apps use for binary data files */
+    public static final String EXTENSION = ".gdb";
+    
+    /** Directory entry size of version 2 files, which have no subject and category blocks */
+    static final int VERSION_2_DIRECTORY_ENTRY_SIZE = 32;
+    
+    /** Header size of version 2 and 3 files, which have no journal checkpoint */
+    static final int VERSION_3_HEADER_SIZE = 80;
+    
+    /** Header size of version 1 files, which end after the grade blocks offset */
+    static final int VERSION_1_HEADER_SIZE = 32;
+    
+    private static final int BUFFER_SIZE = 1 << 20;
+    
+    /**
+     * Check whether a file name has the binary data file extension
+     * @param filename The file name
+     * @return true if the file should be saved in the binary format
+     */
+    public static boolean isBinaryFileName(String filename) {
+        return filename.endsWith(EXTENSION);
+    }
+    
+    /**
+     * Check whether a file starts with the binary gradebook magic number
+     * @param path The file to check
+     * @return true if the file is in the binary format
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBinaryFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading until four bytes arrive or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+    
+    /**
+     * Write every student and grade in a gradebook
+     * The file is written next to the target, fsynced and then renamed over it.
+     * @param gradebook The gradebook to save
+     * @param path The file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Gradebook gradebook, Path path) throws IOException {
+        GradebookSnapshot snapshot = new GradebookSnapshot();
+        synchronized (gradebook) {
+            snapshot.capture(gradebook);
+        }
+        write(snapshot, path);
+    }
+    
+    /**
+     * Write a captured snapshot of a gradebook
+     * The file is written next to the target, fsynced and then renamed over it.
+     * @param snapshot The captured gradebook
+     * @param path The file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(GradebookSnapshot snapshot, Path path) throws IOException {
+        int studentCount = snapshot.getStudentCount();
+        snapshot.groupRowsByStudent();
+        
+        Path temp = GradebookSnapshot.temporaryFileFor(path);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_SIZE);
+            
+            // String table
+            long stringTableOffset = HEADER_SIZE;
+            long[] nameOffsets = new long[studentCount];
+            for (int position = 0; position < studentCount; position++) {
+                nameOffsets[position] = channel.position() + buffer.position();
+                putString(channel, buffer, snapshot.getName(position));
+            }
+            flush(channel, buffer);
+            
+            // Grade blocks: ID, count, the values, then their subject and category IDs
+            long gradeBlocksOffset = channel.position();
+            long[] blockOffsets = new long[studentCount];
+            for (int position = 0; position < studentCount; position++) {
+                int start = snapshot.gradeStart(position);
+                int end = snapshot.gradeEnd(position);
+                ensureRoom(channel, buffer, 8);
+                blockOffsets[position] = channel.position() + buffer.position();
+                buffer.putInt(snapshot.getId(position));
+                buffer.putInt(end - start);
+                for (int i = start; i < end; i++) {
+                    ensureRoom(channel, buffer, 8);
+                    buffer.putDouble(snapshot.gradeValue(i));
+                }
+                for (int i = start; i < end; i++) {
+                    ensureRoom(channel, buffer, 4);
+                    buffer.putInt(snapshot.gradeSubject(i));
+                }
+                for (int i = start; i < end; i++) {
+                    ensureRoom(channel, buffer, 4);
+                    buffer.putInt(snapshot.gradeCategory(i));
+                }
+            }
+            flush(channel, buffer);
+            
+            // Subject and category blocks: per-symbol count and sum, in first-use order
+            long[] slotOffsets = new long[studentCount];
+            GradeSlots subjects = new GradeSlots();
+            GradeSlots categories = new GradeSlots(true);
+            for (int position = 0; position < studentCount; position++) {
+                subjects.clear();
+                categories.clear();
+                for (int i = snapshot.gradeStart(position); i < snapshot.gradeEnd(position); i++) {
+                    if (snapshot.gradeSubject(i) != GradeStore.NONE) {
+                        subjects.add(snapshot.gradeSubject(i), snapshot.gradeValue(i));
+                    }
+                    if (snapshot.gradeCategory(i) != GradeStore.NONE) {
+                        categories.add(snapshot.gradeCategory(i), snapshot.gradeValue(i));
+                    }
+                }
+                slotOffsets[position] = channel.position() + buffer.position();
+                putSlots(channel, buffer, subjects);
+                putSlots(channel, buffer, categories);
+            }
+            flush(channel, buffer);
+            
+            // Directory of fixed-size entries, so a student can be read by position
+            long directoryOffset = channel.position();
+            long totalGrades = 0;
+            double sumOfAverages = 0.0;
+            for (int position = 0; position < studentCount; position++) {
+                int count = snapshot.gradeEnd(position) - snapshot.gradeStart(position);
+                double sum = 0.0;
+                for (int i = snapshot.gradeStart(position); i < snapshot.gradeEnd(position); i++) {
+                    sum += snapshot.gradeValue(i);
+                }
+                ensureRoom(channel, buffer, DIRECTORY_ENTRY_SIZE);
+                buffer.putInt(snapshot.getId(position));
+                buffer.putInt(count);
+                buffer.putDouble(sum);
+                buffer.putLong(nameOffsets[position]);
+                buffer.putLong(blockOffsets[position]);
+                buffer.putLong(slotOffsets[position]);
+                totalGrades += count;
+                sumOfAverages += count == 0 ? 0.0 : sum / count;
+            }
+            flush(channel, buffer);
+            
+            // ID index: (ID, position) packed so that sorting the longs sorts by ID
+            long idIndexOffset = channel.position();
+            long[] idIndex = new long[studentCount];
+            for (int position = 0; position < studentCount; position++) {
+                idIndex[position] = ((long) snapshot.getId(position) << 32) | position;
+            }
+            Arrays.sort(idIndex);
+            for (long entry : idIndex) {
+                ensureRoom(channel, buffer, ID_INDEX_ENTRY_SIZE);
+                buffer.putInt((int) (entry >> 32));
+                buffer.putInt((int) entry);
+            }
+            flush(channel, buffer);
+            
+            // Rank order, as maintained by the gradebook
+            long rankOffset = channel.position();
+            for (int position : snapshot.getRankedPositions()) {
+                ensureRoom(channel, buffer, 4);
+                buffer.putInt(position);
+            }
+            flush(channel, buffer);
+            
+            // Symbol tables: subject names, category names, then one weight per category
+            long symbolTablesOffset = channel.position();
+            putNames(channel, buffer, snapshot.getSubjectNames());
+            putNames(channel, buffer, snapshot.getCategoryNames());
+            for (double weight : snapshot.getCategoryWeights()) {
+                ensureRoom(channel, buffer, 8);
+                buffer.putDouble(weight);
+            }
+            flush(channel, buffer);
+            
+            // Header last, once the section offsets are known
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.order(ByteOrder.BIG_ENDIAN).putInt(MAGIC).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(VERSION);
+            header.putInt(studentCount);
+            header.putInt(0);
+            header.putLong(stringTableOffset);
+            header.putLong(gradeBlocksOffset);
+            header.putLong(directoryOffset);
+            header.putLong(idIndexOffset);
+            header.putLong(rankOffset);
+            header.putLong(totalGrades);
+            header.putDouble(sumOfAverages);
+            header.putLong(symbolTablesOffset);
+            header.putLong(snapshot.getJournalCheckpoint());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        GradebookSnapshot.replace(temp, path);
+    }
+    
+    /**
+     * Read a binary gradebook file into an empty gradebook
+     * @param path The file to read
+     * @param gradebook The gradebook to fill
+     * @return Number of students loaded
+     * @throws IOException if the file cannot be read or is not a valid gradebook file
+     */
+    public static int read(Path path, Gradebook gradebook) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            
+            require(channel, buffer, VERSION_1_HEADER_SIZE);
+            int magic = buffer.order(ByteOrder.BIG_ENDIAN).getInt();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (magic != MAGIC) {
+                throw new IOException("Not a binary gradebook file");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported gradebook file version " + version);
+            }
+            if (version >= 3) {
+                return readLazily(path, gradebook);
+            }
+            int studentCount = buffer.getInt();
+            buffer.getInt(); // flags, unused in this version
+            long stringTableOffset = buffer.getLong();
+            long gradeBlocksOffset = buffer.getLong();
+            // Version 2 adds query sections after the grade blocks, which loading does not need
+            
+            // Names are needed before the grade blocks, which carry the IDs
+            String[] names = new String[studentCount];
+            seek(channel, buffer, stringTableOffset);
+            byte[] nameBytes = new byte[64];
+            for (int i = 0; i < studentCount; i++) {
+                require(channel, buffer, 4);
+                int length = buffer.getInt();
+                if (length > nameBytes.length) {
+                    nameBytes = new byte[length];
+                }
+                getBytes(channel, buffer, nameBytes, length);
+                names[i] = new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+            }
+            
+            seek(channel, buffer, gradeBlocksOffset);
+            double[] grades = new double[256];
+            int loaded = 0;
+            for (int i = 0; i < studentCount; i++) {
+                require(channel, buffer, 8);
+                int id = buffer.getInt();
+                int gradeCount = buffer.getInt();
+                if (gradeCount > grades.length) {
+                    grades = new double[gradeCount];
+                }
+                for (int g = 0; g < gradeCount; g++) {
+                    require(channel, buffer, 8);
+                    grades[g] = buffer.getDouble();
+                }
+                
+                Student student = gradebook.loadStudent(names[i], id);
+                if (student != null) {
+                    student.addGrades(grades, gradeCount);
+                    loaded++;
+                }
+            }
+            return loaded;
+        }
+    }
+    
+    /**
+     * Load a version 3 or later file: students are registered from the directory, and
+     * their grades, subjects and categories are decoded from the file's bytes
+     * the first time each student is used
+     * @param path The file to read
+     * @param gradebook The gradebook to fill
+     * @return Number of students loaded
+     * @throws IOException if the file cannot be read or is not a valid gradebook file
+     */
+    private static int readLazily(Path path, Gradebook gradebook) throws IOException {
+        // Read rather than mapped, so that saving can replace the file
+        GradebookArchive archive = new GradebookArchive(path.toString(), false);
+        gradebook.setJournalCheckpoint(archive.getJournalCheckpoint());
+        
+        String[] subjectNames = archive.getSubjectNames();
+        int[] subjectIds = new int[subjectNames.length];
+        for (int i = 0; i < subjectNames.length; i++) {
+            subjectIds[i] = gradebook.getSubjectTable().intern(subjectNames[i]);
+        }
+        String[] categoryNames = archive.getCategoryNames();
+        int[] categoryIds = new int[categoryNames.length];
+        double[] weights = archive.getCategoryWeights();
+        for (int i = 0; i < categoryNames.length; i++) {
+            categoryIds[i] = gradebook.getCategoryTable().intern(categoryNames[i]);
+            if (i < weights.length && !Double.isNaN(weights[i])) {
+                gradebook.setSavedCategoryWeight(categoryIds[i], weights[i]);
+            }
+        }
+        
+        gradebook.getGradeStore().attachSavedBlocks(new LazyGradeBlocks(archive, subjectIds, categoryIds));
+        int loaded = 0;
+        for (int position = 0; position < archive.getStudentCount(); position++) {
+            Student student = gradebook.loadSavedStudent(archive.getName(position), archive.getId(position),
+                    position, archive.getGradeCount(position), archive.getGradeSum(position));
+            if (student != null) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Write a length-prefixed UTF-8 string
+     */
+    private static void putString(FileChannel channel, ByteBuffer buffer, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureRoom(channel, buffer, 4);
+        buffer.putInt(bytes.length);
+        putBytes(channel, buffer, bytes);
+    }
+    
+    /**
+     * Write a name list: count, then each name as a length-prefixed string
+     */
+    private static void putNames(FileChannel channel, ByteBuffer buffer, String[] names) throws IOException {
+        ensureRoom(channel, buffer, 4);
+        buffer.putInt(names.length);
+        for (String name : names) {
+            putString(channel, buffer, name);
+        }
+    }
+    
+    /**
+     * Write slots: count, then symbol ID, grade count and grade sum per slot
+     */
+    private static void putSlots(FileChannel channel, ByteBuffer buffer, GradeSlots slots) throws IOException {
+        ensureRoom(channel, buffer, 4);
+        buffer.putInt(slots.getSlotCount());
+        for (int i = 0; i < slots.getSlotCount(); i++) {
+            int symbol = slots.getSymbolAt(i);
+            ensureRoom(channel, buffer, SLOT_ENTRY_SIZE);
+            buffer.putInt(symbol);
+            buffer.putInt(slots.getCount(symbol));
+            buffer.putDouble(slots.getSum(symbol));
+        }
+    }
+    
+    /**
+     * Flush the buffer to the channel if it has less than the given room left
+     */
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+    
+    /**
+     * Copy bytes into the buffer, flushing as it fills
+     */
+    private static void putBytes(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureRoom(channel, buffer, 1);
+            int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+    
+    /**
+     * Write out everything in the buffer and clear it
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Make sure at least the given number of unread bytes are in the buffer
+     */
+    private static void require(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Gradebook file is truncated");
+            }
+        }
+        buffer.flip();
+    }
+    
+    /**
+     * Copy bytes out of the buffer, refilling as it drains
+     */
+    private static void getBytes(FileChannel channel, ByteBuffer buffer, byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            require(channel, buffer, 1);
+            int chunk = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+    
+    /**
+     * Discard the buffer and continue reading from an absolute file offset
+     */
+    private static void seek(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        channel.position(offset);
+        buffer.clear();
+        buffer.flip();
+    }
+}
@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe front end for feeding one gradebook from several threads
+ * Grades are checked and staged per student under that student's own lock
+ * and moved into the gradebook in batches, so importer threads only contend
+ * on the gradebook's lock once per batch. Moving a batch in stays serial:
+ * the gradebook's rankings, totals, grade store and journal have a single
+ * writer. A student's staging lane grows with the grades staged in it and is
+ * dropped once they are moved in, so idle students cost nothing here. While
+ * a student has staged grades, the grade count and sum are published
+ * together as an immutable pair, so the average is read without locking.
+ * Rankings and statistics first move every staged grade into the gradebook
+ * and then read it under its lock, so they see a consistent snapshot.
+ *
+ * While importing, grades should be added through this class only, and the
+ * gradebook should not be reloaded. Call flush() before saving the gradebook
+ * directly; staged grades are not in the journal until they are flushed.
+ */
+public class ConcurrentGradebook {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    
+    private final Gradebook gradebook;
+    private final int batchSize;
+    
+    // Staging lanes by student ID, created on a student's first staged grade and dropped when drained
+    private final ConcurrentHashMap<Integer, StudentLane> lanes;
+    
+    private static final int INITIAL_LANE_CAPACITY = 8;
+    
+    /**
+     * Grade count and sum of a student, published as one immutable value
+     */
+    private static final class GradeTotals {
+        final int count;
+        final double sum;
+        
+        GradeTotals(int count, double sum) {
+            this.count = count;
+            this.sum = sum;
+        }
+    }
+    
+    /**
+     * Grades staged for one student, guarded by the lane's own lock
+     */
+    private static final class StudentLane {
+        final int id;
+        double[] values;
+        String[] labels;
+        int stagedCount;
+        boolean retired; // drained and removed from the map; stage into a new lane instead
+        volatile GradeTotals totals;
+        
+        StudentLane(int id, int capacity, GradeTotals totals) {
+            this.id = id;
+            this.values = new double[capacity];
+            this.labels = new String[capacity];
+            this.totals = totals;
+        }
+    }
+    
+    /**
+     * Constructor for ConcurrentGradebook
+     * @param gradebook The gradebook to feed
+     */
+    public ConcurrentGradebook(Gradebook gradebook) {
+        this(gradebook, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * Constructor for ConcurrentGradebook
+     * @param gradebook The gradebook to feed
+     * @param batchSize Number of grades staged per student before they are moved into the gradebook
+     */
+    public ConcurrentGradebook(Gradebook gradebook, int batchSize) {
+        this.gradebook = gradebook;
+        this.batchSize = Math.max(1, batchSize);
+        this.lanes = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Add a new student to the gradebook
+     * @param name Student's name
+     * @param id Student's unique ID
+     * @return true if student was added successfully, false if ID already exists
+     */
+    public boolean addStudent(String name, int id) {
+        return gradebook.addStudent(name, id);
+    }
+    
+    /**
+     * Add an overall grade for a student, without printing
+     * @param id Student's ID
+     * @param grade The grade to add (0-100)
+     * @return true if the grade was accepted, false if it is invalid or the student was not found
+     */
+    public boolean addGrade(int id, double grade) {
+        return stage(id, null, grade);
+    }
+    
+    /**
+     * Add a grade for a subject, or for a category when feeding a
+     * WeightedGradebook, without printing
+     * @param id Student's ID
+     * @param label The subject or category name
+     * @param grade The grade to add (0-100)
+     * @return true if the grade was accepted, false if it is invalid or the student was not found
+     */
+    public boolean addGrade(int id, String label, double grade) {
+        return stage(id, label, grade);
+    }
+    
+    /**
+     * Stage a grade in the student's lane, moving the lane into the gradebook when it is full
+     * @param id Student's ID
+     * @param label The subject or category name, or null for an overall grade
+     * @param grade The grade to add (0-100)
+     * @return true if the grade was accepted
+     */
+    private boolean stage(int id, String label, double grade) {
+        if (!(grade >= 0 && grade <= 100)) {
+            return false;
+        }
+        while (true) {
+            StudentLane lane = laneFor(id);
+            if (lane == null) {
+                return false;
+            }
+            
+            synchronized (lane) {
+                if (lane.retired) {
+                    continue; // drained by another thread after we looked it up
+                }
+                if (lane.stagedCount == lane.values.length) {
+                    int capacity = Math.min(batchSize, lane.values.length * 2);
+                    lane.values = Arrays.copyOf(lane.values, capacity);
+                    lane.labels = Arrays.copyOf(lane.labels, capacity);
+                }
+                lane.values[lane.stagedCount] = grade;
+                lane.labels[lane.stagedCount] = label;
+                lane.stagedCount++;
+                GradeTotals totals = lane.totals;
+                lane.totals = new GradeTotals(totals.count + 1, totals.sum + grade);
+                if (lane.stagedCount == batchSize) {
+                    drain(lane);
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Get a student's lane, creating it from the gradebook on first use
+     * @param id Student's ID
+     * @return The lane, or null if the student was not found
+     */
+    private StudentLane laneFor(int id) {
+        StudentLane lane = lanes.get(id);
+        if (lane != null) {
+            return lane;
+        }
+        return lanes.computeIfAbsent(id, key -> {
+            synchronized (gradebook) {
+                Student student = gradebook.findStudentById(key);
+                if (student == null) {
+                    return null;
+                }
+                return new StudentLane(key, Math.min(batchSize, INITIAL_LANE_CAPACITY),
+                        new GradeTotals(student.getGradeCount(), student.getGradeSum()));
+            }
+        });
+    }
+    
+    /**
+     * Move a lane's staged grades into the gradebook and drop the lane; the
+     * caller holds the lane's lock
+     * @param lane The lane to drain
+     */
+    private void drain(StudentLane lane) {
+        if (lane.retired) {
+            return;
+        }
+        synchronized (gradebook) {
+            int position = gradebook.getPositionOf(lane.id);
+            if (position >= 0) {
+                // Runs of overall grades go in as one update; labelled grades one at a time, in order
+                int runStart = 0;
+                for (int i = 0; i <= lane.stagedCount; i++) {
+                    if (i < lane.stagedCount && lane.labels[i] == null) {
+                        continue;
+                    }
+                    if (i > runStart) {
+                        gradebook.applyGrades(position, lane.values, runStart, i - runStart);
+                    }
+                    if (i < lane.stagedCount) {
+                        gradebook.applyGrade(position, lane.labels[i], lane.values[i]);
+                    }
+                    runStart = i + 1;
+                }
+            }
+        }
+        // Only now that the gradebook holds the grades can a new lane read its totals from it
+        lane.retired = true;
+        lanes.remove(lane.id, lane);
+        lane.values = null;
+        lane.labels = null;
+        lane.stagedCount = 0;
+    }
+    
+    /**
+     * Move every staged grade into the gradebook
+     */
+    public void flush() {
+        for (StudentLane lane : lanes.values()) {
+            synchronized (lane) {
+                drain(lane);
+            }
+        }
+    }
+    
+    /**
+     * Get a student's average, including staged grades; only students with
+     * no staged grades are read under the gradebook's lock
+     * @param id Student's ID
+     * @return The average grade, 0 if the student has no grades or was not found
+     */
+    public double getAverage(int id) {
+        StudentLane lane = lanes.get(id);
+        if (lane == null) {
+            synchronized (gradebook) {
+                Student student = gradebook.findStudentById(id);
+                return student != null ? student.getAverage() : 0.0;
+            }
+        }
+        GradeTotals totals = lane.totals;
+        return totals.count == 0 ? 0.0 : totals.sum / totals.count;
+    }
+    
+    /**
+     * Get a student's number of grades, including staged grades; only students
+     * with no staged grades are read under the gradebook's lock
+     * @param id Student's ID
+     * @return Number of grades, 0 if the student was not found
+     */
+    public int getGradeCount(int id) {
+        StudentLane lane = lanes.get(id);
+        if (lane == null) {
+            synchronized (gradebook) {
+                Student student = gradebook.findStudentById(id);
+                return student != null ? student.getGradeCount() : 0;
+            }
+        }
+        return lane.totals.count;
+    }
+    
+    /**
+     * Display student rankings from a consistent snapshot
+     */
+    public void rankStudents() {
+        flush();
+        synchronized (gradebook) {
+            gradebook.rankStudents();
+        }
+    }
+    
+    /**
+     * Display class statistics from a consistent snapshot
+     */
+    public void displayClassStatistics() {
+        flush();
+        synchronized (gradebook) {
+            gradebook.displayClassStatistics();
+        }
+    }
+    
+    /**
+     * Get the students with the highest averages
+     * @param k Number of students to return
+     * @return Up to k students, highest average first
+     */
+    public ArrayList<Student> getTopStudents(int k) {
+        flush();
+        synchronized (gradebook) {
+            return gradebook.getTopStudents(k);
+        }
+    }
+    
+    /**
+     * Get the class average over every grade added so far
+     * @return Average of the student averages
+     */
+    public double getClassAverage() {
+        flush();
+        synchronized (gradebook) {
+            return gradebook.getClassAverage();
+        }
+    }
+    
+    /**
+     * Get the total number of grades added so far
+     * @return Number of grades
+     */
+    public long getTotalGradeCount() {
+        flush();
+        synchronized (gradebook) {
+            return gradebook.getTotalGradeCount();
+        }
+    }
+    
+    /**
+     * Flush staged grades and save the gradebook in the binary format
+     * @param filename The filename to save to
+     * @return true if save was successful, false otherwise
+     */
+    public boolean saveToBinaryFile(String filename) {
+        flush();
+        return gradebook.saveToBinaryFile(filename);
+    }
+    
+    /**
+     * Get the gradebook this front end feeds; call flush() first to see every grade
+     * @return The gradebook
+     */
+    public Gradebook getGradebook() {
+        return gradebook;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Prints gradebook events to the console, as the apps show them
+ */
+public class ConsoleGradebookListener implements GradebookListener {
+    
+    /**
+     * Print one message line
+     * @param line The message
+     */
+    protected void print(String line) {
+        System.out.println(line);
+    }
+    
+    @Override
+    public void studentAdded(String name, int id) {
+        print("Student " + name + " (ID: " + id + ") added successfully!");
+    }
+    
+    @Override
+    public void duplicateStudent(int id) {
+        print("Student with ID " + id + " already exists!");
+    }
+    
+    @Override
+    public void studentNotFound(int id) {
+        print("Student with ID " + id + " not found!");
+    }
+    
+    @Override
+    public void gradeAdded(Student student, String label, double grade) {
+        if (label == null) {
+            print("Grade " + grade + " added for " + student.getName());
+        } else {
+            print("Grade " + grade + " added for " + student.getName() + " in " + label);
+        }
+    }
+    
+    @Override
+    public void invalidGrade(double grade) {
+        print("Invalid grade. Please enter a grade between 0 and 100.");
+    }
+    
+    @Override
+    public void categoryWeightSet(String category, double weight) {
+        print("Category weight for " + category + " set to " + (weight * 100) + "%");
+    }
+    
+    @Override
+    public void invalidCategoryWeight(String category, double weight) {
+        print("Weight must be between 0.0 and 1.0");
+    }
+    
+    @Override
+    public void dataSaved(String filename) {
+        print("Data saved to " + filename);
+    }
+    
+    @Override
+    public void dataFileMissing(String filename) {
+        print("Data file " + filename + " does not exist. Starting with empty gradebook.");
+    }
+    
+    @Override
+    public void dataLoaded(String filename, int studentCount) {
+        print("Data loaded from " + filename + " (" + studentCount + " students)");
+    }
+    
+    @Override
+    public void changesRecovered(String filename, int count) {
+        print("Recovered " + count + " unsaved changes from " + filename);
+    }
+    
+    @Override
+    public void reportExported(String filename) {
+        print("Report exported to " + filename);
+    }
+    
+    @Override
+    public void warning(String message) {
+        print(message);
+    }
+    
+    @Override
+    public void error(String message) {
+        print(message);
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.Scanner;
 
 /**
@@ -5,19 +7,52 @@ import java.util.Scanner;
  * Provides advanced features for managing student grades
  */
 public class EnhancedGradebookApp {
-    private static final String DATA_FILE = "enhanced_gradebook_data.txt";
+    private static final String DATA_FILE = "enhanced_gradebook_data.gdb";
+    private static final String LEGACY_DATA_FILE = "enhanced_gradebook_data.txt";
+    private static final String JOURNAL_FILE = DATA_FILE + ".journal";
     private WeightedGradebook gradebook;
+    private AutosaveService autosave;
     private Scanner scanner;
     
     public EnhancedGradebookApp() {
-        this.gradebook = new WeightedGradebook(DATA_FILE);
+        this.gradebook = new WeightedGradebook(DATA_FILE, new ConsoleGradebookListener());
+        if (!new File(DATA_FILE).exists() && new File(LEGACY_DATA_FILE).exists()) {
+            // Data saved by earlier versions; the next save writes it in the binary format
+            this.gradebook.loadFromFile(LEGACY_DATA_FILE);
+        }
+        this.gradebook.openJournal(JOURNAL_FILE);
+        this.autosave = new AutosaveService(gradebook, DATA_FILE);
+        this.autosave.start();
         this.scanner = new Scanner(System.in);
     }
     
     /**
      * Main method to run the enhanced application
+     * With --script [file], runs the commands in the file (or standard input)
+     * without menus or pauses, then saves and exits; see GradebookScript.
+     * With --serve [port], answers JSON queries on the loopback address until
+     * stopped, then saves; see GradebookServer
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = args.length > 1 ? GradebookServer.parsePort(args[1]) : GradebookServer.DEFAULT_PORT;
+            if (port < 0) {
+                System.out.println("Usage: java EnhancedGradebookApp --serve [port], with a port from 0 to 65535");
+                return;
+            }
+            EnhancedGradebookApp app = new EnhancedGradebookApp();
+            app.serve(port);
+            return;
+        }
+        
+        if (args.length > 0 && args[0].equals("--script")) {
+            GradebookScript.bufferConsole();
+            EnhancedGradebookApp app = new EnhancedGradebookApp();
+            int errors = app.runScript(args.length > 1 ? args[1] : "-");
+            System.out.flush();
+            System.exit(errors == 0 ? 0 : 1);
+        }
+        
         EnhancedGradebookApp app = new EnhancedGradebookApp();
         app.run();
     }
@@ -327,27 +362,8 @@ public class EnhancedGradebookApp {
         System.out.println("Generated on: " + java.time.LocalDateTime.now());
         System.out.println();
         
-        // Class statistics
-        gradebook.displayClassStatistics();
-        
-        // Category weights
-        gradebook.displayCategoryWeights();
-        
-        // Student rankings (both regular and weighted)
-        System.out.println("=== REGULAR RANKINGS ===");
-        gradebook.rankStudents();
-        
-        System.out.println("=== WEIGHTED RANKINGS ===");
-        gradebook.rankStudentsByWeightedAverage();
-        
-        // Grade distribution
-        gradebook.displayGradeDistribution();
-        
-        // Individual student details
-        System.out.println("=== INDIVIDUAL STUDENT DETAILS ===");
-        for (int i = 0; i < gradebook.getStudentCount(); i++) {
-            gradebook.displayWeightedStudentInfo(gradebook.getAllStudents().get(i).getId());
-        }
+        // Statistics, weights, both rankings, distribution and student details, from one pass
+        gradebook.buildReport().print(System.out);
     }
     
     /**
@@ -365,16 +381,50 @@ public class EnhancedGradebookApp {
         gradebook.exportReport(filename);
     }
     
+    /**
+     * Run a command script, then save and exit
+     * @param source The script's filename, or "-" for standard input
+     * @return Number of script lines that failed
+     */
+    public int runScript(String source) {
+        int errors = new GradebookScript(gradebook).run(source);
+        saveAndExit();
+        return errors;
+    }
+    
+    /**
+     * Serve the gradebook over HTTP until the process is stopped, then save and exit
+     * @param port The port to listen on
+     */
+    public void serve(int port) {
+        GradebookServer server;
+        try {
+            server = new GradebookServer(gradebook, port);
+        } catch (IOException e) {
+            System.out.println("Error starting server: " + e.getMessage());
+            saveAndExit();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            saveAndExit();
+        }));
+        server.start();
+        System.out.println("Serving gradebook queries on http://localhost:" + server.getPort() + "/ (Ctrl+C to stop)");
+    }
+    
     /**
      * Save data and exit the application
      */
     private void saveAndExit() {
         System.out.println("\n--- SAVING AND EXITING ---");
-        if (gradebook.saveToFile(DATA_FILE)) {
+        autosave.stop();
+        if (gradebook.saveToBinaryFile(DATA_FILE)) {
             System.out.println("Data saved successfully. Goodbye!");
         } else {
             System.out.println("There was an error saving data. Please check your file permissions.");
         }
+        gradebook.closeJournal();
     }
     
     /**
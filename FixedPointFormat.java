@@ -0,0 +1,71 @@
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Writes numbers into a StringBuilder exactly as String.format("%d") and
+ * String.format("%.Nf") would, without building a Formatter per call
+ * A value is scaled and rounded directly unless it lies within a hair of a
+ * rounding tie; String.format rounds the shortest decimal form of the value
+ * half up, so those rare values, and locales without ASCII digits, are
+ * handed to String.format itself. The hair grows with the magnitude of the
+ * scaled value, since scaling can be off by a few units in the last place.
+ */
+public class FixedPointFormat {
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10_000, 100_000, 1_000_000};
+    private static final double TIE_MARGIN = 1e-6;
+    private static final double TIE_MARGIN_ULPS = 4;
+    
+    private final char decimalSeparator;
+    private final boolean asciiDigits;
+    
+    /**
+     * Constructor for FixedPointFormat using the default formatting locale, like String.format
+     */
+    public FixedPointFormat() {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.asciiDigits = symbols.getZeroDigit() == '0';
+    }
+    
+    /**
+     * Append an integer the way String.format("%d") does
+     * @param out The output
+     * @param value The value
+     */
+    public void appendInt(StringBuilder out, long value) {
+        if (asciiDigits) {
+            out.append(value);
+        } else {
+            out.append(String.format("%d", value));
+        }
+    }
+    
+    /**
+     * Append a number with a fixed number of decimals, the same as String.format("%.Nf")
+     * @param out The output
+     * @param value The value
+     * @param decimals Number of decimals (0-6)
+     */
+    public void appendFixed(StringBuilder out, double value, int decimals) {
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = value * scale;
+        double whole = Math.floor(scaled);
+        double fraction = scaled - whole;
+        double margin = Math.max(TIE_MARGIN, TIE_MARGIN_ULPS * Math.ulp(scaled));
+        if (!asciiDigits || !(value >= 0 && scaled < 1e15) || Math.abs(fraction - 0.5) < margin) {
+            out.append(String.format("%." + decimals + "f", value));
+            return;
+        }
+        
+        long units = (long) whole + (fraction > 0.5 ? 1 : 0);
+        out.append(units / scale);
+        if (decimals > 0) {
+            out.append(decimalSeparator);
+            long remainder = units % scale;
+            for (long digit = scale / 10; digit > 1 && remainder < digit; digit /= 10) {
+                out.append('0');
+            }
+            out.append(remainder);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+
+/**
+ * Columnar batch of grades for Gradebook.addGrades
+ * Rows are kept in parallel primitive arrays: student ID, subject ID,
+ * category ID and grade. Subject and category IDs come from the target
+ * gradebook's symbol tables, or are GradeStore.NONE when a grade has none.
+ * A grade can have a subject or a category, but not both.
+ */
+public class GradeBatch {
+    private static final int DEFAULT_CAPACITY = 1024;
+    
+    private int[] ids;
+    private int[] subjects;
+    private int[] categories;
+    private double[] values;
+    private int size;
+    
+    /**
+     * Constructor for an empty GradeBatch
+     */
+    public GradeBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructor for an empty GradeBatch
+     * @param expectedRows Number of rows to allocate room for
+     */
+    public GradeBatch(int expectedRows) {
+        int capacity = Math.max(1, expectedRows);
+        this.ids = new int[capacity];
+        this.subjects = new int[capacity];
+        this.categories = new int[capacity];
+        this.values = new double[capacity];
+    }
+    
+    /**
+     * Constructor for a GradeBatch over existing arrays, without copying them
+     * @param ids Student ID of each row
+     * @param subjects Subject ID of each row, or null if no row has a subject
+     * @param categories Category ID of each row, or null if no row has a category
+     * @param values Grade of each row
+     * @param size Number of rows to use from the arrays
+     */
+    public GradeBatch(int[] ids, int[] subjects, int[] categories, double[] values, int size) {
+        this.ids = ids;
+        this.subjects = subjects != null ? subjects : filled(values.length);
+        this.categories = categories != null ? categories : filled(values.length);
+        this.values = values;
+        this.size = size;
+    }
+    
+    private static int[] filled(int length) {
+        int[] column = new int[length];
+        Arrays.fill(column, GradeStore.NONE);
+        return column;
+    }
+    
+    /**
+     * Add an overall grade
+     * @param id Student's ID
+     * @param grade The grade (0-100)
+     */
+    public void add(int id, double grade) {
+        add(id, GradeStore.NONE, GradeStore.NONE, grade);
+    }
+    
+    /**
+     * Add a grade with an optional subject or category
+     * @param id Student's ID
+     * @param subject Subject ID, or GradeStore.NONE
+     * @param category Category ID, or GradeStore.NONE
+     * @param grade The grade (0-100)
+     */
+    public void add(int id, int subject, int category, double grade) {
+        if (size == values.length) {
+            int capacity = Math.max(size + 1, size * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            subjects = Arrays.copyOf(subjects, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        ids[size] = id;
+        subjects[size] = subject;
+        categories[size] = category;
+        values[size] = grade;
+        size++;
+    }
+    
+    /**
+     * Remove every row, keeping the allocated capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Get the number of rows
+     * @return Number of rows
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Get a row's student ID
+     * @param row The row index
+     * @return Student's ID
+     */
+    public int getId(int row) {
+        return ids[row];
+    }
+    
+    /**
+     * Get a row's subject ID
+     * @param row The row index
+     * @return Subject ID, or GradeStore.NONE
+     */
+    public int getSubject(int row) {
+        return subjects[row];
+    }
+    
+    /**
+     * Get a row's category ID
+     * @param row The row index
+     * @return Category ID, or GradeStore.NONE
+     */
+    public int getCategory(int row) {
+        return categories[row];
+    }
+    
+    /**
+     * Get a row's grade
+     * @param row The row index
+     * @return The grade
+     */
+    public double getValue(int row) {
+        return values[row];
+    }
+}
@@ -0,0 +1,508 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a gradebook to CSV or JSON Lines for other systems
+ * Records are encoded byte by byte into a ring of reusable direct buffers,
+ * which are flushed together with one gathering write to the file channel
+ * once they are all full. Subject, category and letter names are escaped
+ * once per export; numbers are written digit by digit, so no String is
+ * built per record.
+ *
+ * Student records carry the grade count, the average and letter grade, the
+ * average in each subject and, for a WeightedGradebook, the weighted average
+ * and the average in each category. Grade records carry the student ID, the
+ * subject and category (empty or null when the grade has none) and the
+ * grade, in the order the grades were added. Averages are written with four
+ * decimals; grades are written exactly, as the shortest text that reads back
+ * as the same value.
+ */
+public class GradeExporter {
+    /**
+     * Output format
+     */
+    public enum Format { CSV, JSON_LINES }
+    
+    /**
+     * What each output line describes
+     */
+    public enum Records { STUDENTS, GRADES }
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_COUNT = 4;
+    private static final long AVERAGE_SCALE = 10_000;
+    
+    private final Gradebook gradebook;
+    private final Format format;
+    private final Records records;
+    
+    // Output ring; buffers before current are full and waiting for the next gathering write
+    private ByteBuffer[] buffers;
+    private int current;
+    private FileChannel channel;
+    private final byte[] digits = new byte[20];
+    
+    /**
+     * Constructor for GradeExporter
+     * @param gradebook The gradebook to export
+     * @param format CSV or JSON Lines
+     * @param records One line per student or one line per grade
+     */
+    public GradeExporter(Gradebook gradebook, Format format, Records records) {
+        this.gradebook = gradebook;
+        this.format = format;
+        this.records = records;
+    }
+    
+    /**
+     * Write the export, replacing the file if it exists; the caller holds the gradebook's lock
+     * @param path The output file
+     * @return Number of records written
+     * @throws IOException if the file cannot be written
+     */
+    public long export(Path path) throws IOException {
+        gradebook.getGradeStore().materializeAll();
+        buffers = new ByteBuffer[BUFFER_COUNT];
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        current = 0;
+        
+        try (FileChannel output = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = output;
+            long written = records == Records.STUDENTS ? writeStudents() : writeGrades();
+            flush();
+            return written;
+        } finally {
+            channel = null;
+            buffers = null;
+        }
+    }
+    
+    /**
+     * Write one record per student
+     * @return Number of records written
+     * @throws IOException if the file cannot be written
+     */
+    private long writeStudents() throws IOException {
+        boolean weighted = gradebook.supportsCategories();
+        SymbolTable subjectTable = gradebook.getSubjectTable();
+        SymbolTable categoryTable = gradebook.getCategoryTable();
+        int subjectCount = subjectTable.size();
+        int categoryCount = weighted ? categoryTable.size() : 0;
+        byte[][] subjectNames = encodeNames(subjectTable, subjectCount);
+        byte[][] categoryNames = encodeNames(categoryTable, categoryCount);
+        byte[][] letters = encodeNames(Student.LETTER_GRADES);
+        
+        if (format == Format.CSV) {
+            StringBuilder header = new StringBuilder("id,name,grade_count,average,letter");
+            if (weighted) {
+                header.append(",weighted_average,weighted_letter");
+            }
+            for (int subject = 0; subject < subjectCount; subject++) {
+                header.append(",\"subject:").append(subjectTable.nameOf(subject).replace("\"", "\"\"")).append('"');
+            }
+            for (int category = 0; category < categoryCount; category++) {
+                header.append(",\"category:").append(categoryTable.nameOf(category).replace("\"", "\"\"")).append('"');
+            }
+            putBytes(header.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+        
+        GradeStore gradeStore = gradebook.getGradeStore();
+        int studentCount = gradebook.getStudentCount();
+        for (int position = 0; position < studentCount; position++) {
+            Student student = gradebook.getStudentAt(position);
+            int storePosition = student.getStorePosition();
+            double average = gradeStore.getAverage(storePosition);
+            GradeSlots subjects = student.getSubjectSlots();
+            GradeSlots categories = weighted ? gradebook.getCategorySlots(position) : null;
+            
+            if (format == Format.CSV) {
+                putLong(student.getId());
+                putByte(',');
+                putText(student.getName());
+                putByte(',');
+                putLong(gradeStore.getGradeCount(storePosition));
+                putByte(',');
+                putAverage(average);
+                putByte(',');
+                putBytes(letters[Student.letterIndexFor(average)]);
+                if (weighted) {
+                    double weightedAverage = gradebook.getWeightedAverageAt(position);
+                    putByte(',');
+                    putAverage(weightedAverage);
+                    putByte(',');
+                    putBytes(letters[Student.letterIndexFor(weightedAverage)]);
+                }
+                for (int subject = 0; subject < subjectCount; subject++) {
+                    putByte(',');
+                    if (subjects.contains(subject)) {
+                        putAverage(subjects.getAverage(subject));
+                    }
+                }
+                for (int category = 0; category < categoryCount; category++) {
+                    putByte(',');
+                    if (categories != null && categories.contains(category)) {
+                        putAverage(categories.getAverage(category));
+                    }
+                }
+            } else {
+                putAscii("{\"id\":");
+                putLong(student.getId());
+                putAscii(",\"name\":");
+                putText(student.getName());
+                putAscii(",\"grade_count\":");
+                putLong(gradeStore.getGradeCount(storePosition));
+                putAscii(",\"average\":");
+                putAverage(average);
+                putAscii(",\"letter\":");
+                putBytes(letters[Student.letterIndexFor(average)]);
+                if (weighted) {
+                    double weightedAverage = gradebook.getWeightedAverageAt(position);
+                    putAscii(",\"weighted_average\":");
+                    putAverage(weightedAverage);
+                    putAscii(",\"weighted_letter\":");
+                    putBytes(letters[Student.letterIndexFor(weightedAverage)]);
+                }
+                putAscii(",\"subjects\":");
+                putAverages(subjects, subjectNames);
+                if (weighted) {
+                    putAscii(",\"categories\":");
+                    putAverages(categories, categoryNames);
+                }
+                putByte('}');
+            }
+            putByte('\n');
+        }
+        return studentCount;
+    }
+    
+    /**
+     * Write a JSON object of the averages in each used slot
+     * @param slots The slots, or null for none
+     * @param names Encoded name of each symbol
+     * @throws IOException if the file cannot be written
+     */
+    private void putAverages(GradeSlots slots, byte[][] names) throws IOException {
+        putByte('{');
+        for (int i = 0; slots != null && i < slots.getSlotCount(); i++) {
+            int symbol = slots.getSymbolAt(i);
+            if (i > 0) {
+                putByte(',');
+            }
+            putBytes(names[symbol]);
+            putByte(':');
+            putAverage(slots.getAverage(symbol));
+        }
+        putByte('}');
+    }
+    
+    /**
+     * Write one record per grade
+     * @return Number of records written
+     * @throws IOException if the file cannot be written
+     */
+    private long writeGrades() throws IOException {
+        SymbolTable subjectTable = gradebook.getSubjectTable();
+        SymbolTable categoryTable = gradebook.getCategoryTable();
+        byte[][] subjectNames = encodeNames(subjectTable, subjectTable.size());
+        byte[][] categoryNames = encodeNames(categoryTable, categoryTable.size());
+        byte[] none = format == Format.CSV ? new byte[0] : "null".getBytes(StandardCharsets.US_ASCII);
+        if (format == Format.CSV) {
+            putAscii("student_id,subject,category,grade\n");
+        }
+        
+        GradeStore gradeStore = gradebook.getGradeStore();
+        int[] subjects = new int[16];
+        int[] categories = new int[16];
+        double[] values = new double[16];
+        long written = 0;
+        for (int position = 0; position < gradebook.getStudentCount(); position++) {
+            Student student = gradebook.getStudentAt(position);
+            int gradeCount = gradeStore.getGradeCount(student.getStorePosition());
+            if (values.length < gradeCount) {
+                int capacity = Math.max(gradeCount, values.length * 2);
+                subjects = new int[capacity];
+                categories = new int[capacity];
+                values = new double[capacity];
+            }
+            int rows = gradeStore.copyStudentRows(student.getStorePosition(), subjects, categories, values);
+            for (int row = 0; row < rows; row++) {
+                byte[] subject = subjects[row] == GradeStore.NONE ? none : subjectNames[subjects[row]];
+                byte[] category = categories[row] == GradeStore.NONE ? none : categoryNames[categories[row]];
+                if (format == Format.CSV) {
+                    putLong(student.getId());
+                    putByte(',');
+                    putBytes(subject);
+                    putByte(',');
+                    putBytes(category);
+                    putByte(',');
+                    putGrade(values[row]);
+                } else {
+                    putAscii("{\"student_id\":");
+                    putLong(student.getId());
+                    putAscii(",\"subject\":");
+                    putBytes(subject);
+                    putAscii(",\"category\":");
+                    putBytes(category);
+                    putAscii(",\"grade\":");
+                    putGrade(values[row]);
+                    putByte('}');
+                }
+                putByte('\n');
+            }
+            written += rows;
+        }
+        return written;
+    }
+    
+    /**
+     * Encode the names of a symbol table as quoted fields in the output format
+     * @param table The symbol table
+     * @param count Number of symbols to encode
+     * @return Encoded name of each symbol
+     */
+    private byte[][] encodeNames(SymbolTable table, int count) {
+        String[] names = new String[count];
+        for (int symbol = 0; symbol < count; symbol++) {
+            names[symbol] = table.nameOf(symbol);
+        }
+        return encodeNames(names);
+    }
+    
+    /**
+     * Encode names as quoted fields in the output format
+     * @param names The names
+     * @return Encoded name of each entry
+     */
+    private byte[][] encodeNames(String[] names) {
+        byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = quote(names[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+    
+    /**
+     * Quote a name once, the same way putText() writes text
+     * @param text The text
+     * @return The quoted text
+     */
+    private String quote(String text) {
+        if (format == Format.CSV) {
+            return needsCsvQuotes(text) ? "\"" + text.replace("\"", "\"\"") + "\"" : text;
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+    
+    private static boolean needsCsvQuotes(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Write text as a CSV field or JSON string, encoding UTF-8 directly into the buffer
+     * @param text The text
+     * @throws IOException if the file cannot be written
+     */
+    private void putText(String text) throws IOException {
+        boolean csv = format == Format.CSV;
+        boolean quoted = !csv || needsCsvQuotes(text);
+        if (quoted) {
+            putByte('"');
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                putByte(csv ? '"' : '\\');
+                putByte('"');
+            } else if (!csv && c == '\\') {
+                putByte('\\');
+                putByte('\\');
+            } else if (!csv && c < 0x20) {
+                putAscii("\\u00");
+                putByte(Character.forDigit(c >> 4, 16));
+                putByte(Character.forDigit(c & 0xF, 16));
+            } else if (c < 0x80) {
+                putByte(c);
+            } else {
+                int codePoint = c;
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, text.charAt(++i));
+                } else if (Character.isSurrogate(c)) {
+                    codePoint = '?';
+                }
+                putCodePoint(codePoint);
+            }
+        }
+        if (quoted) {
+            putByte('"');
+        }
+    }
+    
+    /**
+     * Write a non-ASCII code point as UTF-8
+     * @param codePoint The code point
+     * @throws IOException if the file cannot be written
+     */
+    private void putCodePoint(int codePoint) throws IOException {
+        ByteBuffer buffer = room(4);
+        if (codePoint < 0x80) {
+            buffer.put((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | codePoint >> 6));
+            buffer.put((byte) (0x80 | codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | codePoint >> 12));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint & 0x3F));
+        } else {
+            buffer.put((byte) (0xF0 | codePoint >> 18));
+            buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint & 0x3F));
+        }
+    }
+    
+    /**
+     * Write an average rounded to four decimals
+     * @param value The average
+     * @throws IOException if the file cannot be written
+     */
+    private void putAverage(double value) throws IOException {
+        if (!(value >= 0 && value < 1e12)) {
+            putAscii(Double.toString(value));
+            return;
+        }
+        long units = Math.round(value * AVERAGE_SCALE);
+        putLong(units / AVERAGE_SCALE);
+        putByte('.');
+        long remainder = units % AVERAGE_SCALE;
+        for (long digit = AVERAGE_SCALE / 10; digit > 1 && remainder < digit; digit /= 10) {
+            putByte('0');
+        }
+        putLong(remainder);
+    }
+    
+    /**
+     * Write a grade exactly; grades entered to 0.1 take the fast path
+     * @param value The grade
+     * @throws IOException if the file cannot be written
+     */
+    private void putGrade(double value) throws IOException {
+        double tenths = Math.rint(value * 10);
+        if (value >= 0 && tenths < 1e15 && tenths / 10 == value) {
+            long units = (long) tenths;
+            putLong(units / 10);
+            putByte('.');
+            putByte('0' + (int) (units % 10));
+        } else {
+            putAscii(Double.toString(value));
+        }
+    }
+    
+    /**
+     * Write a whole number in decimal
+     * @param value The number
+     * @throws IOException if the file cannot be written
+     */
+    private void putLong(long value) throws IOException {
+        ByteBuffer buffer = room(digits.length);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                putAscii(Long.toString(value));
+                return;
+            }
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0) {
+            buffer.put(digits[--length]);
+        }
+    }
+    
+    private void putAscii(String text) throws IOException {
+        if (text.length() > BUFFER_SIZE) {
+            putBytes(text.getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        ByteBuffer buffer = room(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+    
+    private void putBytes(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; ) {
+            ByteBuffer buffer = room(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+    
+    private void putByte(int b) throws IOException {
+        room(1).put((byte) b);
+    }
+    
+    /**
+     * Get the buffer to write the next bytes into, moving on or flushing the ring when it is full
+     * @param bytes Number of bytes that must fit together
+     * @return A buffer with at least that much room
+     * @throws IOException if the file cannot be written
+     */
+    private ByteBuffer room(int bytes) throws IOException {
+        if (buffers[current].remaining() < bytes) {
+            if (++current == buffers.length) {
+                flush();
+            }
+        }
+        return buffers[current];
+    }
+    
+    /**
+     * Write every buffer filled so far with one gathering write and reuse them
+     * @throws IOException if the file cannot be written
+     */
+    private void flush() throws IOException {
+        int used = Math.min(current + 1, buffers.length);
+        long remaining = 0;
+        for (int i = 0; i < used; i++) {
+            buffers[i].flip();
+            remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers, 0, used);
+        }
+        for (int i = 0; i < used; i++) {
+            buffers[i].clear();
+        }
+        current = 0;
+    }
+}
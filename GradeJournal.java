@@ -0,0 +1,483 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of gradebook changes
+ * Every change is encoded as a small binary record and written to the file
+ * before the call that logs it returns, so it survives the program exiting
+ * or crashing; bulk changes write their records together when the batch
+ * ends. Only the fsync is grouped: it runs when enough records have been
+ * written since the last one, or when the oldest of them has waited long
+ * enough, and bounds what a power failure can lose. On startup the
+ * journal is replayed over the last saved snapshot. Saving a snapshot rotates
+ * the journal: records up to the capture are moved to a ".prev" file, which is
+ * deleted once the snapshot is on disk and replayed first otherwise. Each
+ * rotation ends with a checkpoint record whose number the snapshot also
+ * stores, so records a snapshot already holds are skipped on replay even if
+ * the program stopped before the ".prev" file was deleted.
+ *
+ * Record layout (little-endian): payload length, type, payload, CRC32 of
+ * type and payload. A torn record at the end of the file is ignored.
+ */
+public class GradeJournal {
+    public static final byte ADD_STUDENT = 1;
+    public static final byte GRADE = 2;
+    public static final byte SUBJECT_GRADE = 3;
+    public static final byte CATEGORY_GRADE = 4;
+    public static final byte CATEGORY_WEIGHT = 5;
+    public static final byte CHECKPOINT = 6;
+    
+    public static final int DEFAULT_GROUP_SIZE = 256;
+    public static final long DEFAULT_GROUP_DELAY_MILLIS = 50;
+    
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4;
+    private static final int BATCH_BYTES = 1 << 16;
+    
+    private Path path;
+    private FileChannel channel;
+    private ByteBuffer pending;
+    private int pendingRecords;
+    private int unforcedRecords;
+    private int batchDepth;
+    private int groupSize;
+    private ScheduledExecutorService flusher;
+    private CRC32 crc;
+    private IOException failure;
+    
+    /**
+     * Open a journal for appending, with the default group commit settings
+     * @param path The journal file
+     * @throws IOException if the journal cannot be opened
+     */
+    public GradeJournal(Path path) throws IOException {
+        this(path, DEFAULT_GROUP_SIZE, DEFAULT_GROUP_DELAY_MILLIS);
+    }
+    
+    /**
+     * Open a journal for appending
+     * @param path The journal file
+     * @param groupSize Number of written records that forces an fsync
+     * @param groupDelayMillis Longest time a written record waits for its fsync
+     * @throws IOException if the journal cannot be opened
+     */
+    public GradeJournal(Path path, int groupSize, long groupDelayMillis) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(validLength(path));
+        this.channel.truncate(this.channel.position()); // drop a torn tail, if any
+        this.pending = ByteBuffer.allocate(BATCH_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.groupSize = Math.max(1, groupSize);
+        this.crc = new CRC32();
+        
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gradebook-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::commitQuietly, groupDelayMillis, groupDelayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Record a new student
+     * @param id Student's ID
+     * @param name Student's name
+     */
+    public synchronized void logAddStudent(int id, String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int start = beginRecord(ADD_STUDENT, 4 + 4 + nameBytes.length);
+        pending.putInt(id);
+        pending.putInt(nameBytes.length);
+        pending.put(nameBytes);
+        endRecord(start);
+    }
+    
+    /**
+     * Record an overall grade
+     * @param id Student's ID
+     * @param grade The grade
+     */
+    public synchronized void logGrade(int id, double grade) {
+        int start = beginRecord(GRADE, 4 + 8);
+        pending.putInt(id);
+        pending.putDouble(grade);
+        endRecord(start);
+    }
+    
+    /**
+     * Record a subject grade
+     * @param id Student's ID
+     * @param subject The subject name
+     * @param grade The grade
+     */
+    public synchronized void logSubjectGrade(int id, String subject, double grade) {
+        logLabeledGrade(SUBJECT_GRADE, id, subject, grade);
+    }
+    
+    /**
+     * Record a category grade
+     * @param id Student's ID
+     * @param category The category name
+     * @param grade The grade
+     */
+    public synchronized void logCategoryGrade(int id, String category, double grade) {
+        logLabeledGrade(CATEGORY_GRADE, id, category, grade);
+    }
+    
+    /**
+     * Record a category weight change
+     * @param category The category name
+     * @param weight The new weight
+     */
+    public synchronized void logCategoryWeight(String category, double weight) {
+        byte[] categoryBytes = category.getBytes(StandardCharsets.UTF_8);
+        int start = beginRecord(CATEGORY_WEIGHT, 4 + categoryBytes.length + 8);
+        pending.putInt(categoryBytes.length);
+        pending.put(categoryBytes);
+        pending.putDouble(weight);
+        endRecord(start);
+    }
+    
+    private void logLabeledGrade(byte type, int id, String label, double grade) {
+        byte[] labelBytes = label.getBytes(StandardCharsets.UTF_8);
+        int start = beginRecord(type, 4 + 4 + labelBytes.length + 8);
+        pending.putInt(id);
+        pending.putInt(labelBytes.length);
+        pending.put(labelBytes);
+        pending.putDouble(grade);
+        endRecord(start);
+    }
+    
+    /**
+     * Hold back writing records until the matching endBatch(), so a bulk
+     * change writes all of its records with one call; batches can nest
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+    
+    /**
+     * Write the records logged since the matching beginBatch()
+     */
+    public synchronized void endBatch() {
+        if (--batchDepth == 0) {
+            writeQuietly();
+        }
+    }
+    
+    /**
+     * Write all pending records and fsync every record written so far
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void commit() throws IOException {
+        if (failure != null) {
+            IOException error = failure;
+            failure = null;
+            throw error;
+        }
+        writePending();
+        if (unforcedRecords > 0) {
+            channel.force(false);
+            unforcedRecords = 0;
+        }
+    }
+    
+    /**
+     * Write the pending records to the file, without an fsync
+     * @throws IOException if the journal cannot be written
+     */
+    private void writePending() throws IOException {
+        if (pendingRecords == 0) {
+            return;
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        } finally {
+            pending.compact(); // keeps anything not written, for the next attempt
+        }
+        unforcedRecords += pendingRecords;
+        pendingRecords = 0;
+    }
+    
+    /**
+     * Write the pending records, keeping an error for the next caller of
+     * commit(), and fsync if the group is full
+     */
+    private void writeQuietly() {
+        try {
+            writePending();
+            if (unforcedRecords >= groupSize) {
+                commit();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+    
+    /**
+     * Commit from the background flusher, keeping the error for the next caller
+     */
+    private synchronized void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+    
+    /**
+     * Start a checkpoint: mark the end of the records written so far and move
+     * them aside, so that the snapshot being captured covers exactly those
+     * records. Records written afterwards go to a fresh journal file.
+     * @param checkpoint Number of the checkpoint, stored in the snapshot too
+     * @throws IOException if the journal cannot be rotated
+     */
+    public synchronized void rotate(long checkpoint) throws IOException {
+        int start = beginRecord(CHECKPOINT, 8);
+        pending.putLong(checkpoint);
+        endRecord(start);
+        commit();
+        Path previous = previousPathFor(path);
+        if (Files.exists(previous)) {
+            // An earlier checkpoint never finished, so its records are still needed
+            try (FileChannel previousChannel = FileChannel.open(previous, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                long size = channel.size();
+                for (long copied = 0; copied < size; ) {
+                    copied += channel.transferTo(copied, size - copied, previousChannel);
+                }
+                previousChannel.force(true);
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        } else {
+            channel.close();
+            Files.move(path, previous, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+    }
+    
+    /**
+     * Finish a checkpoint once its snapshot is safely on disk
+     * @throws IOException if the rotated records cannot be deleted
+     */
+    public synchronized void discardRotated() throws IOException {
+        Files.deleteIfExists(previousPathFor(path));
+    }
+    
+    /**
+     * Commit pending records and close the journal
+     * @throws IOException if the final commit fails
+     */
+    public synchronized void close() throws IOException {
+        flusher.shutdownNow();
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Get the journal file
+     * @return Path of the journal
+     */
+    public Path getPath() {
+        return path;
+    }
+    
+    /**
+     * Start a record, making room for its payload
+     * @param type The record type
+     * @param payloadLength Number of payload bytes
+     * @return Buffer position of the record
+     */
+    private int beginRecord(byte type, int payloadLength) {
+        int needed = RECORD_OVERHEAD + payloadLength;
+        if (pending.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        int start = pending.position();
+        pending.putInt(payloadLength);
+        pending.put(type);
+        return start;
+    }
+    
+    /**
+     * Finish a record with its checksum and write it, unless a batch is open
+     * and has room for more
+     * @param start Buffer position of the record
+     */
+    private void endRecord(int start) {
+        crc.reset();
+        crc.update(pending.array(), start + 4, pending.position() - start - 4);
+        pending.putInt((int) crc.getValue());
+        pendingRecords++;
+        if (batchDepth == 0 || pending.position() >= BATCH_BYTES) {
+            writeQuietly();
+        }
+    }
+    
+    /**
+     * Replay a journal file into a gradebook, skipping the records that the
+     * gradebook's loaded snapshot already holds
+     * @param path The journal file
+     * @param gradebook The gradebook to apply the records to
+     * @return Number of records replayed
+     * @throws IOException if the journal cannot be read
+     */
+    public static int replay(Path path, Gradebook gradebook) throws IOException {
+        long checkpoint = gradebook.getJournalCheckpoint();
+        return replayFile(previousPathFor(path), gradebook, checkpoint) + replayFile(path, gradebook, checkpoint);
+    }
+    
+    /**
+     * Replay one journal file into a gradebook
+     * @param path The journal file
+     * @param gradebook The gradebook to apply the records to
+     * @param checkpoint Last checkpoint the gradebook's snapshot holds
+     * @return Number of records replayed
+     * @throws IOException if the journal cannot be read
+     */
+    private static int replayFile(Path path, Gradebook gradebook, long checkpoint) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        data.position(endOfCheckpoint(data, checkpoint));
+        int replayed = 0;
+        while (nextRecordIsValid(data)) {
+            int payloadLength = data.getInt();
+            byte type = data.get();
+            int end = data.position() + payloadLength;
+            
+            switch (type) {
+                case ADD_STUDENT:
+                    gradebook.replayAddStudent(data.getInt(), getString(data));
+                    break;
+                case GRADE:
+                    gradebook.replayGrade(data.getInt(), data.getDouble());
+                    break;
+                case SUBJECT_GRADE:
+                    gradebook.replaySubjectGrade(data.getInt(), getString(data), data.getDouble());
+                    break;
+                case CATEGORY_GRADE:
+                    gradebook.replayCategoryGrade(data.getInt(), getString(data), data.getDouble());
+                    break;
+                case CATEGORY_WEIGHT:
+                    gradebook.replayCategoryWeight(getString(data), data.getDouble());
+                    break;
+                case CHECKPOINT:
+                    // Marks the end of a rotation; there is nothing to apply
+                    break;
+                default:
+                    // Unknown record types from newer versions are skipped
+                    break;
+            }
+            
+            data.position(end + 4); // skip the checksum
+            if (type != CHECKPOINT) {
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+    
+    /**
+     * Find where the records after a checkpoint start
+     * @param data Journal contents, positioned at the start
+     * @param checkpoint Last checkpoint the snapshot holds
+     * @return Offset just past the last checkpoint record numbered at most
+     *         checkpoint, or 0 if the journal has none
+     */
+    private static int endOfCheckpoint(ByteBuffer data, long checkpoint) {
+        int end = 0;
+        while (nextRecordIsValid(data)) {
+            int start = data.position();
+            int payloadLength = data.getInt(start);
+            if (data.get(start + 4) == CHECKPOINT && payloadLength == 8 && data.getLong(start + 5) <= checkpoint) {
+                end = start + RECORD_OVERHEAD + payloadLength;
+            }
+            data.position(start + RECORD_OVERHEAD + payloadLength);
+        }
+        data.rewind();
+        return end;
+    }
+    
+    /**
+     * Get the file that holds records moved aside by an unfinished checkpoint
+     * @param path The journal file
+     * @return The rotated journal file
+     */
+    static Path previousPathFor(Path path) {
+        return path.resolveSibling(path.getFileName() + ".prev");
+    }
+    
+    /**
+     * Length of the journal up to the end of its last complete record
+     * @param path The journal file
+     * @return Number of valid bytes
+     * @throws IOException if the journal cannot be read
+     */
+    private static long validLength(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        while (nextRecordIsValid(data)) {
+            data.position(data.position() + RECORD_OVERHEAD + data.getInt(data.position()));
+        }
+        return data.position();
+    }
+    
+    /**
+     * Check that a complete record with a matching checksum starts at the buffer position
+     * @param data Journal contents, positioned at a record boundary
+     * @return true if the record can be replayed
+     */
+    private static boolean nextRecordIsValid(ByteBuffer data) {
+        int start = data.position();
+        if (data.remaining() < RECORD_OVERHEAD) {
+            return false;
+        }
+        int payloadLength = data.getInt(start);
+        if (payloadLength < 0 || payloadLength > data.remaining() - RECORD_OVERHEAD) {
+            return false;
+        }
+        
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), start + 4, 1 + payloadLength);
+        return (int) crc.getValue() == data.getInt(start + 4 + 1 + payloadLength);
+    }
+    
+    private static String getString(ByteBuffer data) {
+        int length = data.getInt();
+        if (length < 0 || length > data.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(data.array(), data.position(), length, StandardCharsets.UTF_8);
+        data.position(data.position() + length);
+        return value;
+    }
+}
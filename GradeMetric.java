@@ -0,0 +1,78 @@
+/**
+ * A score students can be ranked by: the plain average, the weighted
+ * average, or the average in one subject or category
+ */
+public final class GradeMetric {
+    /**
+     * What a metric measures
+     */
+    enum Kind { AVERAGE, WEIGHTED_AVERAGE, SUBJECT, CATEGORY }
+    
+    private static final GradeMetric AVERAGE = new GradeMetric(Kind.AVERAGE, null);
+    private static final GradeMetric WEIGHTED_AVERAGE = new GradeMetric(Kind.WEIGHTED_AVERAGE, null);
+    
+    private final Kind kind;
+    private final String name;
+    
+    private GradeMetric(Kind kind, String name) {
+        this.kind = kind;
+        this.name = name;
+    }
+    
+    /**
+     * Rank by the average of all grades
+     * @return The metric
+     */
+    public static GradeMetric average() {
+        return AVERAGE;
+    }
+    
+    /**
+     * Rank by the weighted average (WeightedGradebook only)
+     * @return The metric
+     */
+    public static GradeMetric weightedAverage() {
+        return WEIGHTED_AVERAGE;
+    }
+    
+    /**
+     * Rank by the average in one subject; students without grades in it are left out
+     * @param subject The subject name
+     * @return The metric
+     */
+    public static GradeMetric subject(String subject) {
+        return new GradeMetric(Kind.SUBJECT, subject);
+    }
+    
+    /**
+     * Rank by the average in one category (WeightedGradebook only); students
+     * without grades in it are left out
+     * @param category The category name
+     * @return The metric
+     */
+    public static GradeMetric category(String category) {
+        return new GradeMetric(Kind.CATEGORY, category);
+    }
+    
+    Kind getKind() {
+        return kind;
+    }
+    
+    /**
+     * Get the subject or category name
+     * @return The name, or null for the plain and weighted averages
+     */
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public String toString() {
+        switch (kind) {
+            case AVERAGE: return "average";
+            case WEIGHTED_AVERAGE: return "weighted average";
+            case SUBJECT: return "subject " + name;
+            default: return "category " + name;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.PrintStream;
+
+/**
+ * Snapshot of everything the comprehensive grade report shows
+ * Built by WeightedGradebook.buildReport() in one pass over the students:
+ * each student's average, weighted average and category totals are read
+ * once into arrays indexed by position, next to the maintained class
+ * statistics, both rankings and the letter-grade counts. Every section of
+ * the report is printed from this model, the long ones in parallel through
+ * ParallelRanking.printLines.
+ */
+public class GradeReport {
+    private final WeightedGradebook gradebook;
+    
+    // Class statistics
+    private final int studentCount;
+    private final long totalGrades;
+    private final double classAverage;
+    private final double highestAverage;
+    private final double lowestAverage;
+    private final int[] letterCounts;
+    
+    // Category weights, indexed by category ID
+    private final double[] categoryWeights;
+    private final boolean[] hasCategoryWeight;
+    
+    // Per-student values and both rank orders, by student position
+    private final double[] averages;
+    private final double[] weightedAverages;
+    private final GradeSlots[] categorySlots;
+    private final int[] rankOrder;
+    private final int[] weightedRankOrder;
+    
+    /**
+     * Constructor for GradeReport, called by WeightedGradebook.buildReport()
+     * @param gradebook The gradebook the values were read from
+     * @param categoryWeights Weight of each category ID
+     * @param hasCategoryWeight Whether each category ID has a weight
+     * @param averages Each student's average
+     * @param weightedAverages Each student's weighted average
+     * @param categorySlots Each student's category totals, null for none
+     * @param weightedRankOrder Positions from the highest weighted average down
+     */
+    GradeReport(WeightedGradebook gradebook, double[] categoryWeights, boolean[] hasCategoryWeight,
+                double[] averages, double[] weightedAverages, GradeSlots[] categorySlots, int[] weightedRankOrder) {
+        this.gradebook = gradebook;
+        this.studentCount = gradebook.getStudentCount();
+        this.totalGrades = gradebook.getTotalGradeCount();
+        this.classAverage = gradebook.getClassAverage();
+        this.highestAverage = gradebook.getHighestAverage();
+        this.lowestAverage = gradebook.getLowestAverage();
+        this.letterCounts = gradebook.getLetterGradeCounts();
+        this.categoryWeights = categoryWeights;
+        this.hasCategoryWeight = hasCategoryWeight;
+        this.averages = averages;
+        this.weightedAverages = weightedAverages;
+        this.categorySlots = categorySlots;
+        this.rankOrder = gradebook.getRankedPositions();
+        this.weightedRankOrder = weightedRankOrder;
+    }
+    
+    /**
+     * Get the number of students in the report
+     * @return Number of students
+     */
+    public int getStudentCount() {
+        return studentCount;
+    }
+    
+    /**
+     * Get a student's average
+     * @param position The student's position in the gradebook
+     * @return The average grade
+     */
+    public double getAverage(int position) {
+        return averages[position];
+    }
+    
+    /**
+     * Get a student's weighted average
+     * @param position The student's position in the gradebook
+     * @return The weighted average grade
+     */
+    public double getWeightedAverage(int position) {
+        return weightedAverages[position];
+    }
+    
+    /**
+     * Print every section: statistics, weights, both rankings, the distribution and each student
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        // Student sections read grade rows from several threads, so load any still in the data file first
+        gradebook.getGradeStore().materializeAll();
+        
+        printClassStatistics(out);
+        printCategoryWeights(out);
+        out.println("=== REGULAR RANKINGS ===");
+        printRanking(out, rankOrder, averages, "\n=== STUDENT RANKINGS (by average grade) ===",
+                " - Average: ", "==========================================\n");
+        out.println("=== WEIGHTED RANKINGS ===");
+        printRanking(out, weightedRankOrder, weightedAverages, "\n=== STUDENT RANKINGS (by weighted average) ===",
+                " - Weighted Average: ", "=============================================\n");
+        gradebook.printLetterDistribution(out, "\n=== GRADE DISTRIBUTION ===", letterCounts);
+        out.println("=== INDIVIDUAL STUDENT DETAILS ===");
+        printStudents(out);
+    }
+    
+    /**
+     * Print the class statistics section
+     * @param out The stream to print to
+     */
+    private void printClassStatistics(PrintStream out) {
+        out.println("\n=== CLASS STATISTICS ===");
+        out.printf("Number of students: %d\n", studentCount);
+        out.printf("Total grades entered: %d\n", totalGrades);
+        out.printf("Class average: %.2f\n", classAverage);
+        out.printf("Highest average: %.2f\n", highestAverage);
+        out.printf("Lowest average: %.2f\n", lowestAverage);
+        out.println("=======================\n");
+    }
+    
+    /**
+     * Print the category weights section
+     * @param out The stream to print to
+     */
+    private void printCategoryWeights(PrintStream out) {
+        out.println("\n=== CATEGORY WEIGHTS ===");
+        for (int category = 0; category < hasCategoryWeight.length; category++) {
+            if (hasCategoryWeight[category]) {
+                out.printf("%s: %.1f%%\n", gradebook.getCategoryTable().nameOf(category), categoryWeights[category] * 100);
+            }
+        }
+        out.println("=======================\n");
+    }
+    
+    /**
+     * Print a ranking section
+     * @param out The stream to print to
+     * @param order Positions in rank order
+     * @param scores Each student's score
+     * @param title The heading line
+     * @param scoreLabel Text between the student and the score
+     * @param footer The closing line
+     */
+    private void printRanking(PrintStream out, int[] order, double[] scores, String title, String scoreLabel,
+                              String footer) {
+        FixedPointFormat numbers = new FixedPointFormat();
+        out.println(title);
+        gradebook.getParallelRanking().printLines(order.length, (i, line) -> {
+            Student student = gradebook.getStudentAt(order[i]);
+            double score = scores[order[i]];
+            numbers.appendInt(line, i + 1);
+            line.append(". ").append(student.getName()).append(" (ID: ");
+            numbers.appendInt(line, student.getId());
+            line.append(")").append(scoreLabel);
+            numbers.appendFixed(line, score, 2);
+            line.append(" (").append(Student.letterGradeFor(score)).append(")");
+        }, out);
+        out.println(footer);
+    }
+    
+    /**
+     * Print each student's section, in the order the students were added
+     * @param out The stream to print to
+     */
+    private void printStudents(PrintStream out) {
+        FixedPointFormat numbers = new FixedPointFormat();
+        String lineSeparator = System.lineSeparator();
+        GradeStore gradeStore = gradebook.getGradeStore();
+        SymbolTable categoryTable = gradebook.getCategoryTable();
+        
+        gradebook.getParallelRanking().printLines(studentCount, (position, text) -> {
+            Student student = gradebook.getStudentAt(position);
+            text.append("\n=== WEIGHTED STUDENT INFORMATION ===").append(lineSeparator);
+            text.append("Student: ").append(student.getName()).append(" (ID: ");
+            numbers.appendInt(text, student.getId());
+            text.append(")\n");
+            text.append("Regular Average: ");
+            numbers.appendFixed(text, averages[position], 2);
+            text.append(" (").append(Student.letterGradeFor(averages[position])).append(")\n");
+            text.append("Weighted Average: ");
+            numbers.appendFixed(text, weightedAverages[position], 2);
+            text.append(" (").append(Student.letterGradeFor(weightedAverages[position])).append(")\n");
+            
+            GradeSlots slots = categorySlots[position];
+            if (slots != null && slots.getSlotCount() > 0) {
+                // One walk of the student's rows serves every category
+                int gradeCount = gradeStore.getGradeCount(student.getStorePosition());
+                int[] categories = new int[gradeCount];
+                double[] values = new double[gradeCount];
+                int rows = gradeStore.copyStudentRows(student.getStorePosition(), null, categories, values);
+                
+                text.append("\nCategory Breakdown:").append(lineSeparator);
+                for (int i = 0; i < slots.getSlotCount(); i++) {
+                    int category = slots.getSymbolAt(i);
+                    double weight = category < hasCategoryWeight.length ? categoryWeights[category] : 0.0;
+                    text.append("  ").append(categoryTable.nameOf(category)).append(" (");
+                    numbers.appendFixed(text, weight * 100, 1);
+                    text.append("%): ");
+                    numbers.appendFixed(text, slots.getAverage(category), 2);
+                    text.append(" - [");
+                    int listed = 0;
+                    for (int row = 0; row < rows && listed < slots.getCount(category); row++) {
+                        if (categories[row] == category) {
+                            if (listed++ > 0) {
+                                text.append(", ");
+                            }
+                            text.append(values[row]);
+                        }
+                    }
+                    text.append("]\n");
+                }
+            }
+            text.append("=====================================\n");
+        }, out);
+    }
+}
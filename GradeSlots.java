@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+/**
+ * Per-symbol grade accumulators for a single student
+ * Each slot is indexed by a SymbolTable ID and keeps a running count and
+ * sum, so averages are array lookups. The grade values themselves live in
+ * the gradebook's GradeStore.
+ *
+ * Category slots are compensated: each sum carries a Kahan error term, added
+ * the same way DoubleStream.average() does, so category averages match the
+ * per-category streams they replaced to the last bit.
+ */
+public class GradeSlots {
+    private static final int INITIAL_CAPACITY = 4;
+    
+    private int[] counts;
+    private double[] sums;
+    
+    // Kahan error term of each sum, or null for plain running sums
+    private double[] compensations;
+    
+    // Symbol IDs in the order they were first used
+    private int[] order;
+    private int slotCount;
+    
+    /**
+     * Constructor for empty GradeSlots
+     */
+    public GradeSlots() {
+        this(false);
+    }
+    
+    /**
+     * Constructor for empty GradeSlots
+     * @param compensated true to sum with Kahan compensation, as category slots do
+     */
+    public GradeSlots(boolean compensated) {
+        this.counts = new int[0];
+        this.sums = new double[0];
+        this.order = new int[0];
+        this.compensations = compensated ? new double[0] : null;
+    }
+    
+    /**
+     * Add a grade to a slot, opening the slot on first use
+     * @param symbol The symbol ID
+     * @param grade The grade to add
+     */
+    public void add(int symbol, double grade) {
+        addTotals(symbol, 1, grade);
+    }
+    
+    /**
+     * Add several grades to a slot at once, opening the slot on first use
+     * @param symbol The symbol ID
+     * @param count Number of grades
+     * @param sum Sum of the grades
+     */
+    public void addTotals(int symbol, int count, double sum) {
+        if (symbol >= counts.length) {
+            int capacity = Math.max(symbol + 1, counts.length * 2);
+            counts = Arrays.copyOf(counts, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            if (compensations != null) {
+                compensations = Arrays.copyOf(compensations, capacity);
+            }
+        }
+        
+        if (counts[symbol] == 0) {
+            if (slotCount == order.length) {
+                order = Arrays.copyOf(order, Math.max(INITIAL_CAPACITY, slotCount * 2));
+            }
+            order[slotCount++] = symbol;
+        }
+        
+        counts[symbol] += count;
+        if (compensations == null) {
+            sums[symbol] += sum;
+        } else {
+            // Same steps as Collectors.sumWithCompensation
+            double corrected = sum - compensations[symbol];
+            double total = sums[symbol] + corrected;
+            compensations[symbol] = (total - sums[symbol]) - corrected;
+            sums[symbol] = total;
+        }
+    }
+    
+    /**
+     * Empty every slot, keeping the allocated capacity
+     */
+    public void clear() {
+        for (int i = 0; i < slotCount; i++) {
+            counts[order[i]] = 0;
+            sums[order[i]] = 0.0;
+            if (compensations != null) {
+                compensations[order[i]] = 0.0;
+            }
+        }
+        slotCount = 0;
+    }
+    
+    /**
+     * Check whether a slot has been used
+     * @param symbol The symbol ID
+     * @return true if at least one grade was added to the slot
+     */
+    public boolean contains(int symbol) {
+        return symbol >= 0 && symbol < counts.length && counts[symbol] > 0;
+    }
+    
+    /**
+     * Get the number of grades in a slot
+     * @param symbol The symbol ID
+     * @return Number of grades, 0 if the slot is unused
+     */
+    public int getCount(int symbol) {
+        return contains(symbol) ? counts[symbol] : 0;
+    }
+    
+    /**
+     * Get the sum of the grades in a slot
+     * @param symbol The symbol ID
+     * @return Sum of grades, 0 if the slot is unused
+     */
+    public double getSum(int symbol) {
+        if (!contains(symbol)) {
+            return 0.0;
+        }
+        return compensations == null ? sums[symbol] : sums[symbol] - compensations[symbol];
+    }
+    
+    /**
+     * Get the average of the grades in a slot
+     * @param symbol The symbol ID
+     * @return Average grade, 0 if the slot is empty
+     */
+    public double getAverage(int symbol) {
+        int count = getCount(symbol);
+        return count > 0 ? getSum(symbol) / count : 0.0;
+    }
+    
+    /**
+     * Get the number of slots in use
+     * @return Number of distinct symbols with grades
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+    
+    /**
+     * Get the symbol ID of the i-th slot opened
+     * @param index Position in first-use order (0 to getSlotCount() - 1)
+     * @return The symbol ID
+     */
+    public int getSymbolAt(int index) {
+        return order[index];
+    }
+}
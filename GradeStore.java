@@ -0,0 +1,583 @@
+import java.util.Arrays;
+
+/**
+ * Columnar storage for every grade in a gradebook
+ * Each grade is one row spread over primitive columns (student, subject,
+ * category, value), appended in arrival order. Rows of the same student are
+ * chained through a next-row column, and per-student running sums and counts
+ * are kept in their own columns, so Student objects are thin views over this
+ * store and class-wide scans run over contiguous arrays.
+ *
+ * Students loaded from a version 3 binary file start with only their count
+ * and sum; their rows are read from the file the first time they are needed.
+ * Row-level accessors see those rows only after materializeAll().
+ *
+ * Grade histograms for the whole store and for each subject and category
+ * are updated as rows are appended. Saved rows are counted from the file the
+ * first time a histogram is read.
+ */
+public class GradeStore {
+    /** Column value for a grade that has no subject or category */
+    public static final int NONE = -1;
+    
+    private static final int INITIAL_ROWS = 64;
+    private static final int INITIAL_STUDENTS = 16;
+    
+    // Row columns
+    private int[] studentColumn;
+    private int[] subjectColumn;
+    private int[] categoryColumn;
+    private double[] valueColumn;
+    private int[] nextColumn;
+    private int rowCount;
+    
+    // Student columns, indexed by student position
+    private int[] firstRows;
+    private int[] lastRows;
+    private int[] gradeCounts;
+    private double[] gradeSums;
+    private int studentCount;
+    
+    // Students whose rows are still in a saved file, by student position
+    private LazyGradeBlocks savedBlocks;
+    private int[] savedPositions;
+    private boolean[] rowsPending;
+    private int pendingStudents;
+    
+    // Histograms of every grade, by subject ID and by category ID
+    private GradeHistogram classHistogram;
+    private GradeHistogram[] subjectHistograms;
+    private GradeHistogram[] categoryHistograms;
+    private boolean savedGradesUncounted;
+    
+    /**
+     * Constructor for an empty GradeStore
+     */
+    public GradeStore() {
+        this(INITIAL_STUDENTS, INITIAL_ROWS);
+    }
+    
+    /**
+     * Constructor for a GradeStore sized for an expected amount of data
+     * @param expectedStudents Number of students expected
+     * @param expectedRows Number of grades expected
+     */
+    public GradeStore(int expectedStudents, int expectedRows) {
+        int rows = Math.max(expectedRows, 1);
+        int students = Math.max(expectedStudents, 1);
+        this.studentColumn = new int[rows];
+        this.subjectColumn = new int[rows];
+        this.categoryColumn = new int[rows];
+        this.valueColumn = new double[rows];
+        this.nextColumn = new int[rows];
+        this.firstRows = new int[students];
+        this.lastRows = new int[students];
+        this.gradeCounts = new int[students];
+        this.gradeSums = new double[students];
+        this.savedPositions = new int[students];
+        this.rowsPending = new boolean[students];
+        this.classHistogram = new GradeHistogram();
+        this.subjectHistograms = new GradeHistogram[0];
+        this.categoryHistograms = new GradeHistogram[0];
+    }
+    
+    /**
+     * Reserve columns for a new student
+     * @return The student's position in the store
+     */
+    public int addStudent() {
+        if (studentCount == firstRows.length) {
+            int capacity = studentCount * 2;
+            firstRows = Arrays.copyOf(firstRows, capacity);
+            lastRows = Arrays.copyOf(lastRows, capacity);
+            gradeCounts = Arrays.copyOf(gradeCounts, capacity);
+            gradeSums = Arrays.copyOf(gradeSums, capacity);
+            savedPositions = Arrays.copyOf(savedPositions, capacity);
+            rowsPending = Arrays.copyOf(rowsPending, capacity);
+        }
+        firstRows[studentCount] = NONE;
+        lastRows[studentCount] = NONE;
+        gradeCounts[studentCount] = 0;
+        gradeSums[studentCount] = 0.0;
+        savedPositions[studentCount] = NONE;
+        rowsPending[studentCount] = false;
+        return studentCount++;
+    }
+    
+    /**
+     * Append a grade row for a student
+     * @param student The student's position in the store
+     * @param subject Subject ID, or NONE
+     * @param category Category ID, or NONE
+     * @param value The grade value
+     * @return The new row number
+     */
+    public int append(int student, int subject, int category, double value) {
+        materialize(student); // keep saved grades ahead of new ones
+        int row = linkRow(student, subject, category, value);
+        gradeCounts[student]++;
+        gradeSums[student] += value;
+        countGrade(subject, category, value);
+        return row;
+    }
+    
+    /**
+     * Add a grade to the class histogram and its subject or category histogram
+     * @param subject Subject ID, or NONE
+     * @param category Category ID, or NONE
+     * @param value The grade value
+     */
+    void countGrade(int subject, int category, double value) {
+        classHistogram.add(value);
+        if (subject != NONE) {
+            if (subject >= subjectHistograms.length) {
+                subjectHistograms = Arrays.copyOf(subjectHistograms, Math.max(subject + 1, subjectHistograms.length * 2));
+            }
+            histogramIn(subjectHistograms, subject).add(value);
+        }
+        if (category != NONE) {
+            if (category >= categoryHistograms.length) {
+                categoryHistograms = Arrays.copyOf(categoryHistograms, Math.max(category + 1, categoryHistograms.length * 2));
+            }
+            histogramIn(categoryHistograms, category).add(value);
+        }
+    }
+    
+    private static GradeHistogram histogramIn(GradeHistogram[] histograms, int symbol) {
+        if (histograms[symbol] == null) {
+            histograms[symbol] = new GradeHistogram();
+        }
+        return histograms[symbol];
+    }
+    
+    /**
+     * Write a row and chain it after the student's last row
+     * @param student The student's position in the store
+     * @param subject Subject ID, or NONE
+     * @param category Category ID, or NONE
+     * @param value The grade value
+     * @return The new row number
+     */
+    private int linkRow(int student, int subject, int category, double value) {
+        if (rowCount == valueColumn.length) {
+            growRows(rowCount + 1);
+        }
+        
+        int row = rowCount;
+        studentColumn[row] = student;
+        subjectColumn[row] = subject;
+        categoryColumn[row] = category;
+        valueColumn[row] = value;
+        nextColumn[row] = NONE;
+        
+        if (lastRows[student] == NONE) {
+            firstRows[student] = row;
+        } else {
+            nextColumn[lastRows[student]] = row;
+        }
+        lastRows[student] = row;
+        
+        rowCount = row + 1;
+        return row;
+    }
+    
+    /**
+     * Attach the saved file that lazily loaded students read their rows from
+     * @param blocks The saved grade blocks
+     */
+    public void attachSavedBlocks(LazyGradeBlocks blocks) {
+        this.savedBlocks = blocks;
+    }
+    
+    /**
+     * Mark a student as loaded from the saved file, with its rows still on disk
+     * @param student The student's position in the store
+     * @param savedPosition The student's position in the saved file
+     * @param count Number of saved grades
+     * @param sum Sum of the saved grades
+     */
+    public void markSaved(int student, int savedPosition, int count, double sum) {
+        savedPositions[student] = savedPosition;
+        gradeCounts[student] = count;
+        gradeSums[student] = sum;
+        if (count > 0) {
+            rowsPending[student] = true;
+            pendingStudents++;
+            savedGradesUncounted = true;
+        }
+    }
+    
+    /**
+     * Check whether a student was loaded from the saved file
+     * @param student The student's position in the store
+     * @return true if the student's subject and category totals are in the file
+     */
+    public boolean isSaved(int student) {
+        return savedBlocks != null && savedPositions[student] != NONE;
+    }
+    
+    /**
+     * Read a saved student's per-subject totals from the file
+     * @param student The student's position in the store
+     * @return Subject slots in first-use order
+     */
+    public GradeSlots loadSubjectSlots(int student) {
+        return savedBlocks.readSubjectSlots(savedPositions[student]);
+    }
+    
+    /**
+     * Read a saved student's per-category totals from the file
+     * @param student The student's position in the store
+     * @return Category slots in first-use order
+     */
+    public GradeSlots loadCategorySlots(int student) {
+        return savedBlocks.readCategorySlots(savedPositions[student]);
+    }
+    
+    /**
+     * Append a row read from the saved file; the student's count and sum already include it
+     * @param student The student's position in the store
+     * @param subject Subject ID, or NONE
+     * @param category Category ID, or NONE
+     * @param value The grade value
+     */
+    void appendSavedRow(int student, int subject, int category, double value) {
+        linkRow(student, subject, category, value);
+    }
+    
+    /**
+     * Read a student's rows from the saved file if they are not loaded yet
+     * @param student The student's position in the store
+     */
+    private void materialize(int student) {
+        if (pendingStudents > 0 && rowsPending[student]) {
+            loadRows(student);
+        }
+    }
+    
+    /**
+     * Read the rows of every student that still has rows in the saved file
+     */
+    public synchronized void materializeAll() {
+        for (int student = 0; pendingStudents > 0 && student < studentCount; student++) {
+            if (rowsPending[student]) {
+                loadRows(student);
+            }
+        }
+    }
+    
+    /**
+     * Read one student's rows from the saved file
+     * @param student The student's position in the store
+     */
+    private synchronized void loadRows(int student) {
+        if (!rowsPending[student]) {
+            return;
+        }
+        rowsPending[student] = false;
+        pendingStudents--;
+        savedBlocks.appendRows(this, student, savedPositions[student]);
+    }
+    
+    /**
+     * Add the grades still in the saved file to the histograms, once
+     * Rows already read into the store are counted from the file as well,
+     * since reading them does not count them.
+     */
+    private synchronized void countSavedGrades() {
+        if (!savedGradesUncounted) {
+            return;
+        }
+        savedGradesUncounted = false;
+        for (int student = 0; student < studentCount; student++) {
+            if (savedPositions[student] != NONE) {
+                savedBlocks.countGrades(this, savedPositions[student]);
+            }
+        }
+    }
+    
+    /**
+     * Get a copy of the histogram of every grade
+     * @return The class histogram
+     */
+    public GradeHistogram getClassHistogram() {
+        countSavedGrades();
+        return new GradeHistogram(classHistogram);
+    }
+    
+    /**
+     * Get a copy of the histogram of one subject's grades
+     * @param subject The subject ID
+     * @return The subject histogram, empty if the subject has no grades
+     */
+    public GradeHistogram getSubjectHistogram(int subject) {
+        return copyOf(subjectHistograms, subject);
+    }
+    
+    /**
+     * Get a copy of the histogram of one category's grades
+     * @param category The category ID
+     * @return The category histogram, empty if the category has no grades
+     */
+    public GradeHistogram getCategoryHistogram(int category) {
+        return copyOf(categoryHistograms, category);
+    }
+    
+    private GradeHistogram copyOf(GradeHistogram[] histograms, int symbol) {
+        countSavedGrades();
+        if (symbol < 0 || symbol >= histograms.length || histograms[symbol] == null) {
+            return new GradeHistogram();
+        }
+        return new GradeHistogram(histograms[symbol]);
+    }
+    
+    /**
+     * Make room for at least the given number of rows
+     * @param minRows Number of rows required
+     */
+    public void ensureRowCapacity(int minRows) {
+        if (minRows > valueColumn.length) {
+            growRows(minRows);
+        }
+    }
+    
+    /**
+     * Grow all row columns together
+     * @param minRows Number of rows required
+     */
+    private void growRows(int minRows) {
+        int capacity = Math.max(minRows, valueColumn.length + (valueColumn.length >> 1) + 1);
+        studentColumn = Arrays.copyOf(studentColumn, capacity);
+        subjectColumn = Arrays.copyOf(subjectColumn, capacity);
+        categoryColumn = Arrays.copyOf(categoryColumn, capacity);
+        valueColumn = Arrays.copyOf(valueColumn, capacity);
+        nextColumn = Arrays.copyOf(nextColumn, capacity);
+    }
+    
+    /**
+     * Get the number of grades for a student
+     * @param student The student's position in the store
+     * @return Number of grades
+     */
+    public int getGradeCount(int student) {
+        return gradeCounts[student];
+    }
+    
+    /**
+     * Get the sum of a student's grades
+     * @param student The student's position in the store
+     * @return Running sum of the grades
+     */
+    public double getGradeSum(int student) {
+        return gradeSums[student];
+    }
+    
+    /**
+     * Get the average of a student's grades
+     * @param student The student's position in the store
+     * @return Average grade, 0 if the student has no grades
+     */
+    public double getAverage(int student) {
+        int count = gradeCounts[student];
+        return count == 0 ? 0.0 : gradeSums[student] / count;
+    }
+    
+    /**
+     * Get a student's grades in the order they were added
+     * @param student The student's position in the store
+     * @return The grade values
+     */
+    public double[] getGrades(int student) {
+        materialize(student);
+        double[] values = new double[gradeCounts[student]];
+        int i = 0;
+        for (int row = firstRows[student]; row != NONE; row = nextColumn[row]) {
+            values[i++] = valueColumn[row];
+        }
+        return values;
+    }
+    
+    /**
+     * Copy a student's grades with their subjects and categories in one walk, in the order they were added
+     * @param student The student's position in the store
+     * @param subjects Output subject IDs (NONE for no subject), or null if not needed
+     * @param categories Output category IDs (NONE for no category), or null if not needed
+     * @param values Output grade values, with room for getGradeCount(student)
+     * @return Number of rows copied
+     */
+    public int copyStudentRows(int student, int[] subjects, int[] categories, double[] values) {
+        materialize(student);
+        int i = 0;
+        for (int row = firstRows[student]; row != NONE; row = nextColumn[row], i++) {
+            if (subjects != null) {
+                subjects[i] = subjectColumn[row];
+            }
+            if (categories != null) {
+                categories[i] = categoryColumn[row];
+            }
+            values[i] = valueColumn[row];
+        }
+        return i;
+    }
+    
+    /**
+     * Get a student's grades for one subject
+     * @param student The student's position in the store
+     * @param subject The subject ID
+     * @param count Number of grades the student has in the subject
+     * @return The grade values in the order they were added
+     */
+    public double[] getSubjectGrades(int student, int subject, int count) {
+        return collect(student, true, subject, count);
+    }
+    
+    /**
+     * Get a student's grades for one category
+     * @param student The student's position in the store
+     * @param category The category ID
+     * @param count Number of grades the student has in the category
+     * @return The grade values in the order they were added
+     */
+    public double[] getCategoryGrades(int student, int category, int count) {
+        return collect(student, false, category, count);
+    }
+    
+    /**
+     * Walk a student's rows and keep the values whose column matches a symbol
+     * @param student The student's position in the store
+     * @param bySubject true to match the subject column, false for the category column
+     * @param symbol The ID to match
+     * @param count Number of matching rows expected
+     * @return The matching values
+     */
+    private double[] collect(int student, boolean bySubject, int symbol, int count) {
+        materialize(student); // may grow the columns, so pick the column afterwards
+        int[] column = bySubject ? subjectColumn : categoryColumn;
+        double[] values = new double[count];
+        int i = 0;
+        for (int row = firstRows[student]; row != NONE && i < count; row = nextColumn[row]) {
+            if (column[row] == symbol) {
+                values[i++] = valueColumn[row];
+            }
+        }
+        return i == count ? values : Arrays.copyOf(values, i);
+    }
+    
+    /**
+     * Get the number of grade rows in the store
+     * @return Number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    /**
+     * Get the number of students in the store
+     * @return Number of students
+     */
+    public int getStudentCount() {
+        return studentCount;
+    }
+    
+    /**
+     * Get the student of a row
+     * @param row The row number
+     * @return The student's position
+     */
+    public int getStudent(int row) {
+        return studentColumn[row];
+    }
+    
+    /**
+     * Get the subject of a row
+     * @param row The row number
+     * @return Subject ID, or NONE
+     */
+    public int getSubject(int row) {
+        return subjectColumn[row];
+    }
+    
+    /**
+     * Get the category of a row
+     * @param row The row number
+     * @return Category ID, or NONE
+     */
+    public int getCategory(int row) {
+        return categoryColumn[row];
+    }
+    
+    /**
+     * Get the value of a row
+     * @param row The row number
+     * @return The grade value
+     */
+    public double getValue(int row) {
+        return valueColumn[row];
+    }
+    
+    /**
+     * Copy every row column; call materializeAll() first to include saved rows
+     * @param students Output array with room for getRowCount() entries
+     * @param subjects Output array with room for getRowCount() entries
+     * @param categories Output array with room for getRowCount() entries
+     * @param values Output array with room for getRowCount() entries
+     */
+    public void copyRows(int[] students, int[] subjects, int[] categories, double[] values) {
+        System.arraycopy(studentColumn, 0, students, 0, rowCount);
+        System.arraycopy(subjectColumn, 0, subjects, 0, rowCount);
+        System.arraycopy(categoryColumn, 0, categories, 0, rowCount);
+        System.arraycopy(valueColumn, 0, values, 0, rowCount);
+    }
+    
+    /**
+     * Sum every grade in the store
+     * @return Sum of all grade values
+     */
+    public double sumAllGrades() {
+        materializeAll();
+        double[] values = valueColumn;
+        double sum = 0.0;
+        for (int row = 0; row < rowCount; row++) {
+            sum += values[row];
+        }
+        return sum;
+    }
+    
+    /**
+     * Compute every student's average in one pass over the student columns
+     * @param averages Output array with room for getStudentCount() entries
+     */
+    public void computeAverages(double[] averages) {
+        computeAverages(averages, 0, studentCount);
+    }
+    
+    /**
+     * Compute the averages of a range of students into a caller-provided array
+     * Different ranges can be computed on different threads.
+     * @param averages Output array indexed by student position
+     * @param from First student position
+     * @param to Position just past the last student
+     */
+    public void computeAverages(double[] averages, int from, int to) {
+        int[] counts = gradeCounts;
+        double[] sums = gradeSums;
+        for (int student = from; student < to; student++) {
+            int count = counts[student];
+            averages[student] = count == 0 ? 0.0 : sums[student] / count;
+        }
+    }
+    
+    /**
+     * Remove every student and grade
+     */
+    public void clear() {
+        rowCount = 0;
+        studentCount = 0;
+        savedBlocks = null;
+        pendingStudents = 0;
+        classHistogram.clear();
+        subjectHistograms = new GradeHistogram[0];
+        categoryHistograms = new GradeHistogram[0];
+        savedGradesUncounted = false;
+    }
+}
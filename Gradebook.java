@@ -1,8 +1,8 @@
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.io.*;
-import java.util.Scanner;
+import java.nio.file.Path;
 
 /**
  * Gradebook class to manage a collection of students
@@ -10,14 +10,60 @@ import java.util.Scanner;
  */
 public class Gradebook {
     private ArrayList<Student> students;
+    private StudentIndex studentIndex;
+    private SymbolTable subjectTable;
+    private SymbolTable categoryTable;
+    private GradeStore gradeStore;
     private String dataFile;
     
+    // Category weights read from a binary data file, NaN for a category without one
+    private double[] savedCategoryWeights;
+    
+    // Class statistics, maintained as grades arrive
+    private long totalGrades;
+    private double sumOfAverages;
+    private RankingIndex ranking;
+    private int[] letterCounts; // students per letter grade, A to F
+    
+    // Write-ahead journal of changes since the last save, or null if not enabled
+    private GradeJournal journal;
+    // Number of the last journal checkpoint, loaded from and saved to binary data files
+    private long journalCheckpoint;
+    
+    // Receives added students, grades, saves and errors; silent unless set
+    private volatile GradebookListener listener;
+    
+    // Splits ranking and statistics work for large gradebooks across a fork/join pool
+    private ParallelRanking parallelRanking;
+    
+    // Number of changes so far, read by the autosave thread; saves are serialized on saveLock
+    private volatile long changeCount;
+    private final Object saveLock = new Object();
+    
     /**
      * Constructor for Gradebook
      * @param dataFile The filename to save/load data from
      */
     public Gradebook(String dataFile) {
+        this(dataFile, GradebookListener.NONE);
+    }
+    
+    /**
+     * Constructor for Gradebook that reports its events to a listener
+     * @param dataFile The filename to save/load data from
+     * @param listener Receives added students, grades, saves and errors
+     */
+    public Gradebook(String dataFile, GradebookListener listener) {
+        this.listener = listener;
+        this.parallelRanking = new ParallelRanking();
         this.students = new ArrayList<>();
+        this.studentIndex = new StudentIndex();
+        this.subjectTable = new SymbolTable();
+        this.categoryTable = new SymbolTable();
+        this.savedCategoryWeights = new double[0];
+        this.gradeStore = new GradeStore();
+        this.ranking = new RankingIndex();
+        this.letterCounts = new int[Student.LETTER_GRADES.length];
         this.dataFile = dataFile;
         loadFromFile(dataFile);
     }
@@ -28,35 +74,184 @@ public class Gradebook {
      * @param id Student's unique ID
      * @return true if student was added successfully, false if ID already exists
      */
-    public boolean addStudent(String name, int id) {
+    public synchronized boolean addStudent(String name, int id) {
         // Check if student with this ID already exists
-        for (Student student : students) {
-            if (student.getId() == id) {
-                System.out.println("Student with ID " + id + " already exists!");
-                return false;
-            }
+        if (!studentIndex.putIfAbsent(id, students.size())) {
+            listener.duplicateStudent(id);
+            return false;
         }
         
-        Student newStudent = new Student(name, id);
-        students.add(newStudent);
-        System.out.println("Student " + name + " (ID: " + id + ") added successfully!");
+        Student newStudent = new Student(name, id, subjectTable, gradeStore);
+        register(newStudent);
+        if (journal != null) {
+            journal.logAddStudent(id, name);
+        }
+        listener.studentAdded(name, id);
         return true;
     }
     
+    /**
+     * Append a new student to the list and start tracking its statistics
+     * @param student The student to register (must already be indexed)
+     */
+    private void register(Student student) {
+        ranking.add(students.size(), student.getAverage());
+        students.add(student);
+        student.attachTo(this);
+        
+        totalGrades += student.getGradeCount();
+        sumOfAverages += student.getAverage();
+        letterCounts[Student.letterIndexFor(student.getAverage())]++;
+        changeCount++;
+        onStudentAdded(students.size() - 1);
+    }
+    
+    /**
+     * Add a student read from a data file, without printing a message
+     * @param name Student's name
+     * @param id Student's unique ID
+     * @return The new student, or null if the ID is already taken
+     */
+    Student loadStudent(String name, int id) {
+        if (!studentIndex.putIfAbsent(id, students.size())) {
+            return null;
+        }
+        Student student = new Student(name, id, subjectTable, gradeStore);
+        register(student);
+        return student;
+    }
+    
+    /**
+     * Add a student from a binary data file whose grades are read on first use
+     * @param name Student's name
+     * @param id Student's unique ID
+     * @param savedPosition The student's position in the file
+     * @param count Number of grades saved for the student
+     * @param sum Sum of the saved grades
+     * @return The new student, or null if the ID is already taken
+     */
+    Student loadSavedStudent(String name, int id, int savedPosition, int count, double sum) {
+        if (!studentIndex.putIfAbsent(id, students.size())) {
+            return null;
+        }
+        Student student = new Student(name, id, subjectTable, gradeStore);
+        gradeStore.markSaved(student.getStorePosition(), savedPosition, count, sum);
+        register(student);
+        return student;
+    }
+    
+    /**
+     * Remember a category weight read from a binary data file
+     * @param category The category ID
+     * @param weight The weight (0.0 to 1.0)
+     */
+    void setSavedCategoryWeight(int category, double weight) {
+        if (category >= savedCategoryWeights.length) {
+            int oldLength = savedCategoryWeights.length;
+            savedCategoryWeights = Arrays.copyOf(savedCategoryWeights, Math.max(category + 1, oldLength * 2));
+            Arrays.fill(savedCategoryWeights, oldLength, savedCategoryWeights.length, Double.NaN);
+        }
+        savedCategoryWeights[category] = weight;
+    }
+    
+    /**
+     * Get the weight of a category to store in a data file
+     * @param category The category ID
+     * @return The weight, or NaN if the category has none
+     */
+    double getSavedCategoryWeight(int category) {
+        return category < savedCategoryWeights.length ? savedCategoryWeights[category] : Double.NaN;
+    }
+    
+    /**
+     * Update class statistics after grades were added for a student
+     * @param student The student whose grades changed
+     * @param oldAverage The student's average before the grades were added
+     * @param added Number of grades added
+     */
+    void onGradesAdded(Student student, double oldAverage, int added) {
+        double newAverage = student.getAverage();
+        int position = studentIndex.get(student.getId());
+        totalGrades += added;
+        sumOfAverages += newAverage - oldAverage;
+        ranking.update(position, newAverage);
+        int oldLetter = Student.letterIndexFor(oldAverage);
+        int newLetter = Student.letterIndexFor(newAverage);
+        if (oldLetter != newLetter) {
+            letterCounts[oldLetter]--;
+            letterCounts[newLetter]++;
+        }
+        changeCount++;
+        onStudentGradesChanged(position);
+    }
+    
+    /**
+     * Hook called after all students are removed before a reload, for
+     * subclasses that keep their own per-student indexes
+     */
+    protected void onStudentsCleared() {
+    }
+    
+    /**
+     * Hook called after a data file has been loaded, for subclasses that
+     * keep settings stored in the file. May run during the initial load,
+     * before a subclass constructor has finished.
+     */
+    protected void onDataLoaded() {
+    }
+    
+    /**
+     * Hook called after a student is added, for subclasses that keep their
+     * own per-student indexes. May run during the initial load, before a
+     * subclass constructor has finished.
+     * @param position The student's position in the gradebook
+     */
+    protected void onStudentAdded(int position) {
+    }
+    
+    /**
+     * Hook called after a student's grades change, for subclasses that keep
+     * their own per-student indexes. May run during the initial load, before
+     * a subclass constructor has finished.
+     * @param position The student's position in the gradebook
+     */
+    protected void onStudentGradesChanged(int position) {
+    }
+    
+    /**
+     * Clear the student list, index and statistics
+     */
+    private void clearStudents() {
+        students.clear();
+        studentIndex.clear();
+        gradeStore.clear();
+        totalGrades = 0;
+        sumOfAverages = 0.0;
+        ranking.clear();
+        Arrays.fill(letterCounts, 0);
+        savedCategoryWeights = new double[0];
+        changeCount++;
+        onStudentsCleared();
+    }
+    
     /**
      * Add a grade for a specific student
      * @param id Student's ID
      * @param grade The grade to add (0-100)
      * @return true if grade was added successfully, false if student not found
      */
-    public boolean addGrade(int id, double grade) {
+    public synchronized boolean addGrade(int id, double grade) {
         Student student = findStudentById(id);
         if (student != null) {
+            int before = student.getGradeCount();
             student.addGrade(grade);
-            System.out.println("Grade " + grade + " added for " + student.getName());
+            if (journal != null && student.getGradeCount() > before) {
+                journal.logGrade(id, grade);
+            }
+            listener.gradeAdded(student, null, grade);
             return true;
         } else {
-            System.out.println("Student with ID " + id + " not found!");
+            listener.studentNotFound(id);
             return false;
         }
     }
@@ -68,30 +263,253 @@ public class Gradebook {
      * @param grade The grade to add (0-100)
      * @return true if grade was added successfully, false if student not found
      */
-    public boolean addGrade(int id, String subject, double grade) {
+    public synchronized boolean addGrade(int id, String subject, double grade) {
         Student student = findStudentById(id);
         if (student != null) {
+            int before = student.getGradeCount();
             student.addGradeForSubject(subject, grade);
-            System.out.println("Grade " + grade + " added for " + student.getName() + " in " + subject);
+            if (journal != null && student.getGradeCount() > before) {
+                journal.logSubjectGrade(id, subject, grade);
+            }
+            listener.gradeAdded(student, subject, grade);
             return true;
         } else {
-            System.out.println("Student with ID " + id + " not found!");
+            listener.studentNotFound(id);
             return false;
         }
     }
     
+    /**
+     * Add many overall grades at once, without printing
+     * @param ids Student ID of each grade
+     * @param grades The grades (0-100)
+     * @param count Number of grades to read from the arrays
+     * @return Bit i is set if grade i was added
+     */
+    public BitSet addGrades(int[] ids, double[] grades, int count) {
+        return addGrades(new GradeBatch(ids, null, null, grades, count));
+    }
+    
+    /**
+     * Add many grades with subjects at once, without printing
+     * @param ids Student ID of each grade
+     * @param subjects Subject ID of each grade from getSubjectTable(), or GradeStore.NONE
+     * @param grades The grades (0-100)
+     * @param count Number of grades to read from the arrays
+     * @return Bit i is set if grade i was added
+     */
+    public BitSet addGrades(int[] ids, int[] subjects, double[] grades, int count) {
+        return addGrades(new GradeBatch(ids, subjects, null, grades, count));
+    }
+    
+    /**
+     * Add a batch of grades at once, without printing
+     * Rows are validated in one pass, grouped by student and applied with a
+     * single statistics update per student. A row is rejected if its student
+     * is not found, its grade is outside 0-100, its subject or category ID is
+     * unknown, or it has both a subject and a category.
+     * @param batch The grades to add
+     * @return Bit i is set if row i was added
+     */
+    public synchronized BitSet addGrades(GradeBatch batch) {
+        int size = batch.size();
+        BitSet added = new BitSet(size);
+        int subjectCount = subjectTable.size();
+        int categoryCount = supportsCategories() ? categoryTable.size() : 0;
+        
+        // Validate, and count the accepted rows of each student
+        int[] positions = new int[size];
+        int[] starts = new int[students.size() + 1];
+        for (int row = 0; row < size; row++) {
+            int position = studentIndex.get(batch.getId(row));
+            double grade = batch.getValue(row);
+            int subject = batch.getSubject(row);
+            int category = batch.getCategory(row);
+            if (position < 0 || !(grade >= 0 && grade <= 100)
+                    || (subject != GradeStore.NONE && (subject < 0 || subject >= subjectCount))
+                    || (category != GradeStore.NONE && (category < 0 || category >= categoryCount))
+                    || (subject != GradeStore.NONE && category != GradeStore.NONE)) {
+                continue;
+            }
+            added.set(row);
+            positions[row] = position;
+            starts[position + 1]++;
+        }
+        for (int position = 0; position < students.size(); position++) {
+            starts[position + 1] += starts[position];
+        }
+        
+        // Group the accepted rows by student, keeping their order
+        int[] order = new int[starts[students.size()]];
+        int[] cursors = Arrays.copyOf(starts, students.size());
+        for (int row = added.nextSetBit(0); row >= 0; row = added.nextSetBit(row + 1)) {
+            order[cursors[positions[row]]++] = row;
+        }
+        
+        int[] subjects = new int[0];
+        int[] categories = new int[0];
+        double[] values = new double[0];
+        if (journal != null) {
+            journal.beginBatch();
+        }
+        try {
+            applyBatchRows(batch, starts, order, subjects, categories, values);
+        } finally {
+            if (journal != null) {
+                journal.endBatch();
+            }
+        }
+        return added;
+    }
+    
+    /**
+     * Apply the accepted rows of a batch, one student at a time
+     * @param batch The grades being added
+     * @param starts First index into order of each student's rows
+     * @param order Accepted row indexes, grouped by student
+     * @param subjects Scratch column for a student's subject IDs
+     * @param categories Scratch column for a student's category IDs
+     * @param values Scratch column for a student's grades
+     */
+    private void applyBatchRows(GradeBatch batch, int[] starts, int[] order,
+                                int[] subjects, int[] categories, double[] values) {
+        for (int position = 0; position < students.size(); position++) {
+            int count = starts[position + 1] - starts[position];
+            if (count == 0) {
+                continue;
+            }
+            if (values.length < count) {
+                subjects = new int[count];
+                categories = new int[count];
+                values = new double[count];
+            }
+            for (int i = 0; i < count; i++) {
+                int row = order[starts[position] + i];
+                subjects[i] = batch.getSubject(row);
+                categories[i] = batch.getCategory(row);
+                values[i] = batch.getValue(row);
+                if (categories[i] != GradeStore.NONE) {
+                    addCategoryTotal(position, categories[i], values[i]);
+                }
+            }
+            Student student = students.get(position);
+            student.addGradeRows(subjects, categories, values, count);
+            if (journal != null) {
+                logGradeRows(student.getId(), subjects, categories, values, count);
+            }
+        }
+    }
+    
+    /**
+     * Journal grade rows added by addGrades
+     * @param id Student's ID
+     * @param subjects Subject ID of each row, or GradeStore.NONE
+     * @param categories Category ID of each row, or GradeStore.NONE
+     * @param values The grades
+     * @param count Number of rows
+     */
+    private void logGradeRows(int id, int[] subjects, int[] categories, double[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            if (subjects[i] != GradeStore.NONE) {
+                journal.logSubjectGrade(id, subjectTable.nameOf(subjects[i]), values[i]);
+            } else if (categories[i] != GradeStore.NONE) {
+                journal.logCategoryGrade(id, categoryTable.nameOf(categories[i]), values[i]);
+            } else {
+                journal.logGrade(id, values[i]);
+            }
+        }
+    }
+    
+    /**
+     * Get a student's category totals, for exports
+     * @param position The student's position in the gradebook
+     * @return The category slots, or null if the student has none
+     */
+    GradeSlots getCategorySlots(int position) {
+        return null;
+    }
+    
+    /**
+     * Get a student's weighted average, for exports
+     * @param position The student's position in the gradebook
+     * @return The weighted average; the plain average in a gradebook without weights
+     */
+    double getWeightedAverageAt(int position) {
+        return students.get(position).getAverage();
+    }
+    
+    /**
+     * Check whether grades can carry a category, for addGrades
+     * @return true if the gradebook keeps category grades
+     */
+    boolean supportsCategories() {
+        return false;
+    }
+    
+    /**
+     * Count a batch grade towards a student's category, before it is added to
+     * the student; only called when supportsCategories() is true
+     * @param position The student's position in the gradebook
+     * @param category The category ID
+     * @param grade The grade
+     */
+    void addCategoryTotal(int position, int category, double grade) {
+    }
+    
+    /**
+     * Add validated overall grades for a student in one update, without printing
+     * @param position The student's position in the gradebook
+     * @param values The grades to add (0-100)
+     * @param offset Index of the first value to read
+     * @param count Number of values to read from the array
+     */
+    synchronized void applyGrades(int position, double[] values, int offset, int count) {
+        Student student = students.get(position);
+        student.addGrades(values, offset, count);
+        if (journal != null) {
+            journal.beginBatch();
+            try {
+                for (int i = offset; i < offset + count; i++) {
+                    journal.logGrade(student.getId(), values[i]);
+                }
+            } finally {
+                journal.endBatch();
+            }
+        }
+    }
+    
+    /**
+     * Add a validated grade for a subject, without printing; WeightedGradebook
+     * treats the label as a category, as addGrade(int, String, double) does
+     * @param position The student's position in the gradebook
+     * @param label The subject name
+     * @param grade The grade to add (0-100)
+     */
+    synchronized void applyGrade(int position, String label, double grade) {
+        Student student = students.get(position);
+        student.addGradeForSubject(label, grade);
+        if (journal != null) {
+            journal.logSubjectGrade(student.getId(), label, grade);
+        }
+    }
+    
     /**
      * Find a student by their ID
      * @param id The student's ID
      * @return Student object if found, null otherwise
      */
     public Student findStudentById(int id) {
-        for (Student student : students) {
-            if (student.getId() == id) {
-                return student;
-            }
-        }
-        return null;
+        int position = studentIndex.get(id);
+        return position >= 0 ? students.get(position) : null;
+    }
+    
+    /**
+     * Get a student's position in the gradebook, in the order added
+     * @param id The student's ID
+     * @return The position, or -1 if not found
+     */
+    public int getPositionOf(int id) {
+        return studentIndex.get(id);
     }
     
     /**
@@ -136,25 +554,178 @@ public class Gradebook {
             return;
         }
         
-        // Create a copy of the students list and sort by average
-        ArrayList<Student> sortedStudents = new ArrayList<>(students);
-        Collections.sort(sortedStudents, new Comparator<Student>() {
-            @Override
-            public int compare(Student s1, Student s2) {
-                return Double.compare(s2.getAverage(), s1.getAverage()); // Descending order
-            }
-        });
-        
+        // Walk the maintained ranking from the highest average down
+        int[] order = ranking.range(0, students.size());
         System.out.println("\n=== STUDENT RANKINGS (by average grade) ===");
-        for (int i = 0; i < sortedStudents.size(); i++) {
-            Student student = sortedStudents.get(i);
-            System.out.println(String.format("%d. %s (ID: %d) - Average: %.2f (%s)",
+        parallelRanking.printLines(order.length, (i, line) -> {
+            Student student = students.get(order[i]);
+            line.append(String.format("%d. %s (ID: %d) - Average: %.2f (%s)",
                     i + 1, student.getName(), student.getId(), 
                     student.getAverage(), student.getLetterGrade()));
-        }
+        }, System.out);
         System.out.println("==========================================\n");
     }
     
+    /**
+     * Get the students with the highest averages
+     * @param k Number of students to return
+     * @return Up to k students, highest average first
+     */
+    public ArrayList<Student> getTopStudents(int k) {
+        return getStudentsInRankRange(1, k);
+    }
+    
+    /**
+     * Get the students ranked between two positions
+     * @param fromRank First rank (1 is the highest average)
+     * @param toRank Last rank (inclusive)
+     * @return Students in rank order
+     */
+    public ArrayList<Student> getStudentsInRankRange(int fromRank, int toRank) {
+        int[] positions = ranking.range(fromRank - 1, toRank);
+        ArrayList<Student> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(students.get(position));
+        }
+        return result;
+    }
+    
+    /**
+     * Get the students with the highest scores for a metric, without printing
+     * @param k Number of students to return
+     * @param metric What to rank by
+     * @return Up to k students, highest score first, ties in the order they were added
+     */
+    public synchronized ArrayList<Student> topK(int k, GradeMetric metric) {
+        return selectK(k, metric, true);
+    }
+    
+    /**
+     * Get the students with the lowest scores for a metric, without printing
+     * @param k Number of students to return
+     * @param metric What to rank by
+     * @return Up to k students, lowest score first, in the reverse of topK's order
+     */
+    public synchronized ArrayList<Student> bottomK(int k, GradeMetric metric) {
+        return selectK(k, metric, false);
+    }
+    
+    /**
+     * Select the k best or worst students for a metric
+     * @param k Number of students to return
+     * @param metric What to rank by
+     * @param highest true for the highest scores, false for the lowest
+     * @return Up to k students, best first
+     */
+    private ArrayList<Student> selectK(int k, GradeMetric metric, boolean highest) {
+        int count = students.size();
+        k = Math.max(0, Math.min(k, count));
+        
+        int[] positions;
+        RankingIndex index = rankingFor(metric);
+        if (index != null) {
+            // A maintained ranking answers directly from its ends
+            if (highest) {
+                positions = index.range(0, k);
+            } else {
+                positions = index.range(count - k, count);
+                for (int i = 0, j = positions.length - 1; i < j; i++, j--) {
+                    int position = positions[i];
+                    positions[i] = positions[j];
+                    positions[j] = position;
+                }
+            }
+        } else {
+            positions = scanK(k, metric, highest);
+        }
+        
+        ArrayList<Student> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(students.get(position));
+        }
+        return result;
+    }
+    
+    /**
+     * Select the k best or worst students in one pass over every student
+     * Each chunk of students fills its own bounded heap and the heaps are merged.
+     * @param k Number of students to return
+     * @param metric A subject or category metric
+     * @param highest true for the highest scores, false for the lowest
+     * @return Positions of up to k students, best first
+     */
+    private int[] scanK(int k, GradeMetric metric, boolean highest) {
+        SymbolTable table = metric.getKind() == GradeMetric.Kind.SUBJECT ? subjectTable : categoryTable;
+        int symbol = table.lookup(metric.getName());
+        if (symbol < 0 || k == 0) {
+            return new int[0];
+        }
+        
+        int count = students.size();
+        TopKSelector[] selectors = new TopKSelector[parallelRanking.chunkCount(count)];
+        parallelRanking.forEachChunk(count, (chunk, from, to) -> {
+            TopKSelector selector = new TopKSelector(k, highest);
+            for (int position = from; position < to; position++) {
+                double score = metricValue(metric, symbol, position);
+                if (!Double.isNaN(score)) {
+                    selector.offer(position, score);
+                }
+            }
+            selectors[chunk] = selector;
+        });
+        for (int chunk = 1; chunk < selectors.length; chunk++) {
+            selectors[0].merge(selectors[chunk]);
+        }
+        return selectors[0].toSortedPositions();
+    }
+    
+    /**
+     * Get the maintained ranking for a metric
+     * @param metric What to rank by
+     * @return The ranking, or null if the metric has to be scanned
+     * @throws IllegalArgumentException if this gradebook cannot rank by the metric
+     */
+    RankingIndex rankingFor(GradeMetric metric) {
+        switch (metric.getKind()) {
+            case AVERAGE:
+                return ranking;
+            case SUBJECT:
+                return null;
+            default:
+                throw new IllegalArgumentException("Cannot rank by " + metric + " without category weights");
+        }
+    }
+    
+    /**
+     * Get a student's score for a subject or category metric; may run on several threads at once
+     * @param metric A subject or category metric
+     * @param symbol The subject or category ID
+     * @param position The student's position in the gradebook
+     * @return The score, or NaN if the student has no grades for it
+     */
+    double metricValue(GradeMetric metric, int symbol, int position) {
+        GradeSlots slots = students.get(position).getSubjectSlots();
+        return slots.contains(symbol) ? slots.getAverage(symbol) : Double.NaN;
+    }
+    
+    /**
+     * Get every student's position from the highest average down
+     * @return Positions in rank order
+     */
+    int[] getRankedPositions() {
+        return ranking.range(0, students.size());
+    }
+    
+    /**
+     * Get a student's rank by average grade
+     * @param id The student's ID
+     * @return Rank starting at 1 for the highest average, or -1 if not found
+     */
+    public int getRankOf(int id) {
+        int position = studentIndex.get(id);
+        return position >= 0 ? ranking.rankOf(position) + 1 : -1;
+    }
+    
     /**
      * Display grade distribution chart
      */
@@ -164,25 +735,94 @@ public class Gradebook {
             return;
         }
         
-        int[] gradeRanges = new int[5]; // A, B, C, D, F
+        // Counts are kept up to date as grades arrive
+        printLetterDistribution(System.out, "\n=== GRADE DISTRIBUTION ===", letterCounts);
+    }
+    
+    /**
+     * Print a letter-grade distribution
+     * @param out The stream to print to
+     * @param title The heading line
+     * @param counts Students per letter grade, A to F
+     */
+    void printLetterDistribution(PrintStream out, String title, int[] counts) {
         String[] gradeLabels = {"A (90-100)", "B (80-89)", "C (70-79)", "D (60-69)", "F (0-59)"};
+        out.println(title);
+        for (int i = 0; i < gradeLabels.length; i++) {
+            out.printf("%s: %d students\n", gradeLabels[i], counts[i]);
+        }
+        out.println("========================\n");
+    }
+    
+    /**
+     * Get the number of students with each letter grade, in O(1)
+     * @return Students per letter grade, indexed like Student.LETTER_GRADES
+     */
+    public synchronized int[] getLetterGradeCounts() {
+        return letterCounts.clone();
+    }
+    
+    /**
+     * Display a histogram of every grade with its median and quartiles
+     * @param bucketWidth Width of each bar in grade points, from 0.1 up
+     */
+    public synchronized void displayGradeHistogram(double bucketWidth) {
+        GradeHistogram histogram = gradeStore.getClassHistogram();
+        if (histogram.getCount() == 0) {
+            System.out.println("No grades to analyze.");
+            return;
+        }
         
-        for (Student student : students) {
-            String letterGrade = student.getLetterGrade();
-            switch (letterGrade) {
-                case "A": gradeRanges[0]++; break;
-                case "B": gradeRanges[1]++; break;
-                case "C": gradeRanges[2]++; break;
-                case "D": gradeRanges[3]++; break;
-                case "F": gradeRanges[4]++; break;
-            }
+        int binsPerBucket = Math.max(1, (int) Math.round(bucketWidth * GradeHistogram.BINS_PER_POINT));
+        int bucketCount = (GradeHistogram.BIN_COUNT + binsPerBucket - 1) / binsPerBucket;
+        long[] buckets = new long[bucketCount];
+        long largest = 0;
+        for (int bin = 0; bin < GradeHistogram.BIN_COUNT; bin++) {
+            buckets[bin / binsPerBucket] += histogram.getBinCount(bin);
+        }
+        for (long bucket : buckets) {
+            largest = Math.max(largest, bucket);
         }
         
-        System.out.println("\n=== GRADE DISTRIBUTION ===");
-        for (int i = 0; i < gradeRanges.length; i++) {
-            System.out.printf("%s: %d students\n", gradeLabels[i], gradeRanges[i]);
+        System.out.println("\n=== GRADE HISTOGRAM ===");
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            int firstBin = bucket * binsPerBucket;
+            int lastBin = Math.min(firstBin + binsPerBucket, GradeHistogram.BIN_COUNT) - 1;
+            int barLength = (int) Math.round(40.0 * buckets[bucket] / largest);
+            System.out.printf("%5.1f-%5.1f: %-40s %d\n", GradeHistogram.gradeOf(firstBin),
+                    GradeHistogram.gradeOf(lastBin), "#".repeat(barLength), buckets[bucket]);
         }
-        System.out.println("========================\n");
+        System.out.printf("Median: %.2f\n", histogram.getMedian());
+        System.out.printf("25th percentile: %.2f\n", histogram.getPercentile(25));
+        System.out.printf("75th percentile: %.2f\n", histogram.getPercentile(75));
+        System.out.printf("Interquartile range: %.2f\n", histogram.getInterquartileRange());
+        System.out.println("=======================\n");
+    }
+    
+    /**
+     * Get the histogram of every grade, for medians and percentiles
+     * @return A copy of the class histogram
+     */
+    public synchronized GradeHistogram getGradeHistogram() {
+        return gradeStore.getClassHistogram();
+    }
+    
+    /**
+     * Get the histogram of one subject's grades
+     * @param subject The subject name
+     * @return A copy of the subject histogram, empty if the subject has no grades
+     */
+    public synchronized GradeHistogram getSubjectHistogram(String subject) {
+        return gradeStore.getSubjectHistogram(subjectTable.lookup(subject));
+    }
+    
+    /**
+     * Get the histogram of one category's grades
+     * @param category The category name
+     * @return A copy of the category histogram, empty if the category has no grades
+     */
+    public synchronized GradeHistogram getCategoryHistogram(String category) {
+        return gradeStore.getCategoryHistogram(categoryTable.lookup(category));
     }
     
     /**
@@ -194,141 +834,337 @@ public class Gradebook {
             return;
         }
         
-        double totalAverage = 0.0;
-        double highestGrade = 0.0;
-        double lowestGrade = 100.0;
-        int totalGrades = 0;
-        
-        for (Student student : students) {
-            double studentAverage = student.getAverage();
-            totalAverage += studentAverage;
-            
-            if (studentAverage > highestGrade) {
-                highestGrade = studentAverage;
-            }
-            if (studentAverage < lowestGrade) {
-                lowestGrade = studentAverage;
-            }
-            
-            totalGrades += student.getGradeCount();
-        }
-        
-        double classAverage = totalAverage / students.size();
-        
         System.out.println("\n=== CLASS STATISTICS ===");
         System.out.printf("Number of students: %d\n", students.size());
-        System.out.printf("Total grades entered: %d\n", totalGrades);
-        System.out.printf("Class average: %.2f\n", classAverage);
-        System.out.printf("Highest average: %.2f\n", highestGrade);
-        System.out.printf("Lowest average: %.2f\n", lowestGrade);
+        System.out.printf("Total grades entered: %d\n", getTotalGradeCount());
+        System.out.printf("Class average: %.2f\n", getClassAverage());
+        System.out.printf("Highest average: %.2f\n", getHighestAverage());
+        System.out.printf("Lowest average: %.2f\n", getLowestAverage());
         System.out.println("=======================\n");
     }
     
+    /**
+     * Get the total number of grades entered for all students
+     * @return Number of grades
+     */
+    public long getTotalGradeCount() {
+        return totalGrades;
+    }
+    
+    /**
+     * Get the class average (the mean of the student averages)
+     * @return Class average, 0 if there are no students
+     */
+    public double getClassAverage() {
+        return students.isEmpty() ? 0.0 : sumOfAverages / students.size();
+    }
+    
+    /**
+     * Get the highest student average
+     * @return Highest average, 0 if there are no students
+     */
+    public double getHighestAverage() {
+        return ranking.getHighestScore();
+    }
+    
+    /**
+     * Get the lowest student average
+     * @return Lowest average, 0 if there are no students
+     */
+    public double getLowestAverage() {
+        return ranking.getLowestScore();
+    }
+    
     /**
      * Save student data to file
+     * The file is replaced atomically, so a failed save leaves the old file intact
      * @param filename The filename to save to
      * @return true if save was successful, false otherwise
      */
     public boolean saveToFile(String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            for (Student student : students) {
-                // Format: Name, ID, Grades (comma-separated)
-                writer.printf("%s,%d,%s%n", 
-                    student.getName(), 
-                    student.getId(), 
-                    student.getGradesString().replace(", ", ","));
+        try {
+            writeSnapshot(new GradebookSnapshot(), filename);
+            listener.dataSaved(filename);
+            return true;
+        } catch (IOException e) {
+            listener.error("Error saving to file: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Capture a point-in-time snapshot and write it in the text format
+     * Changes are only blocked while the snapshot is copied, not while it is written.
+     * @param snapshot The snapshot buffer to capture into (reused between saves)
+     * @param filename The filename to save to
+     * @throws IOException if the file cannot be written
+     */
+    void writeSnapshot(GradebookSnapshot snapshot, String filename) throws IOException {
+        writeSnapshot(snapshot, filename, false);
+    }
+    
+    /**
+     * Capture a point-in-time snapshot and write it in the text or binary format
+     * @param snapshot The snapshot buffer to capture into (reused between saves)
+     * @param filename The filename to save to
+     * @param binary true to write the binary format
+     * @throws IOException if the file cannot be written
+     */
+    void writeSnapshot(GradebookSnapshot snapshot, String filename, boolean binary) throws IOException {
+        synchronized (saveLock) {
+            GradeJournal rotated;
+            synchronized (this) {
+                rotated = beginCheckpoint(filename);
+                snapshot.capture(this);
+            }
+            if (binary) {
+                snapshot.writeBinary(new File(filename).toPath());
+            } else {
+                snapshot.writeText(new File(filename).toPath());
             }
-            System.out.println("Data saved to " + filename);
+            endCheckpoint(rotated);
+        }
+    }
+    
+    /**
+     * Save student data to file in the versioned binary format
+     * Grades are stored exactly with their subjects and categories, along with
+     * the category weights, and the file is detected automatically on load
+     * @param filename The filename to save to
+     * @return true if save was successful, false otherwise
+     */
+    public boolean saveToBinaryFile(String filename) {
+        try {
+            writeSnapshot(new GradebookSnapshot(), filename, true);
+            listener.dataSaved(filename);
             return true;
         } catch (IOException e) {
-            System.out.println("Error saving to file: " + e.getMessage());
+            listener.error("Error saving to file: " + e.getMessage());
             return false;
         }
     }
     
     /**
      * Load student data from file
+     * Both the text format and the binary format are accepted
      * @param filename The filename to load from
      * @return true if load was successful, false otherwise
      */
-    public boolean loadFromFile(String filename) {
+    public synchronized boolean loadFromFile(String filename) {
         File file = new File(filename);
         if (!file.exists()) {
-            System.out.println("Data file " + filename + " does not exist. Starting with empty gradebook.");
+            listener.dataFileMissing(filename);
             return true;
         }
         
-        try (Scanner scanner = new Scanner(file)) {
-            students.clear(); // Clear existing data
-            
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
-                
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    String name = parts[0];
-                    int id = Integer.parseInt(parts[1]);
-                    
-                    Student student = new Student(name, id);
-                    
-                    // Add grades if they exist
-                    if (parts.length > 2 && !parts[2].equals("No grades")) {
-                        String[] gradeStrings = parts[2].split(",");
-                        for (String gradeStr : gradeStrings) {
-                            try {
-                                double grade = Double.parseDouble(gradeStr.trim());
-                                student.addGrade(grade);
-                            } catch (NumberFormatException e) {
-                                // Skip invalid grades
-                            }
-                        }
-                    }
-                    
-                    students.add(student);
-                }
+        try {
+            clearStudents(); // Clear existing data
+            journalCheckpoint = 0; // text files and older binary files have none
+            if (BinaryGradebookFile.isBinaryFile(file.toPath())) {
+                BinaryGradebookFile.read(file.toPath(), this);
+            } else {
+                new TextGradebookFile().read(file.toPath(), this);
             }
-            System.out.println("Data loaded from " + filename + " (" + students.size() + " students)");
+            onDataLoaded();
+            listener.dataLoaded(filename, students.size());
             return true;
         } catch (IOException e) {
-            System.out.println("Error loading from file: " + e.getMessage());
+            listener.error("Error loading from file: " + e.getMessage());
             return false;
         }
     }
     
+    /**
+     * Replay the journal of changes made since the last save, then append
+     * every further change to it so that nothing is lost if the program stops
+     * before the next save
+     * @param filename The journal file
+     * @return true if the journal was opened, false otherwise
+     */
+    public synchronized boolean openJournal(String filename) {
+        if (journal != null) {
+            closeJournal();
+        }
+        
+        try {
+            Path path = new File(filename).toPath();
+            int replayed = GradeJournal.replay(path, this);
+            journal = new GradeJournal(path);
+            if (replayed > 0) {
+                listener.changesRecovered(filename, replayed);
+            }
+            return true;
+        } catch (IOException e) {
+            listener.error("Error opening journal: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Commit any buffered journal records and stop journaling
+     */
+    public synchronized void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            listener.error("Error closing journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+    
+    /**
+     * Get the journal that records changes, for subclasses with their own changes
+     * @return The open journal, or null if journaling is not enabled
+     */
+    GradeJournal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * Rotate the journal when the data file is about to be saved, so that the
+     * saved data covers exactly the rotated records; the caller holds the lock
+     * @param filename The file being saved
+     * @return The rotated journal, or null if there is nothing to checkpoint
+     * @throws IOException if the journal cannot be rotated
+     */
+    private GradeJournal beginCheckpoint(String filename) throws IOException {
+        if (journal == null || !new File(filename).getAbsoluteFile().equals(new File(dataFile).getAbsoluteFile())) {
+            return null;
+        }
+        journal.rotate(++journalCheckpoint);
+        return journal;
+    }
+    
+    /**
+     * Get the number of the last journal checkpoint the gradebook's data holds
+     * @return The checkpoint number, or 0 if there has been none
+     */
+    long getJournalCheckpoint() {
+        return journalCheckpoint;
+    }
+    
+    /**
+     * Remember the journal checkpoint read from a binary data file
+     * @param checkpoint The checkpoint number
+     */
+    void setJournalCheckpoint(long checkpoint) {
+        journalCheckpoint = checkpoint;
+    }
+    
+    /**
+     * Drop the rotated journal records once the data file holds them
+     * @param rotated The journal returned by beginCheckpoint, or null
+     * @throws IOException if the rotated records cannot be deleted
+     */
+    private void endCheckpoint(GradeJournal rotated) throws IOException {
+        if (rotated != null) {
+            rotated.discardRotated();
+        }
+    }
+    
+    /**
+     * Get the number of changes made to the gradebook so far
+     * @return A counter that grows with every added student or grade, and
+     *         with every change subclasses count through countChange()
+     */
+    public long getChangeCount() {
+        return changeCount;
+    }
+    
+    /**
+     * Count a change a subclass keeps outside the students, such as a
+     * category weight, so that autosave writes it; the caller holds the lock
+     */
+    void countChange() {
+        changeCount++;
+    }
+    
+    /**
+     * Replay a journaled new student
+     * @param id Student's ID
+     * @param name Student's name
+     */
+    void replayAddStudent(int id, String name) {
+        loadStudent(name, id);
+    }
+    
+    /**
+     * Replay a journaled overall grade
+     * @param id Student's ID
+     * @param grade The grade
+     */
+    void replayGrade(int id, double grade) {
+        Student student = findStudentById(id);
+        if (student != null) {
+            student.addGrade(grade);
+        }
+    }
+    
+    /**
+     * Replay a journaled subject grade
+     * @param id Student's ID
+     * @param subject The subject name
+     * @param grade The grade
+     */
+    void replaySubjectGrade(int id, String subject, double grade) {
+        Student student = findStudentById(id);
+        if (student != null) {
+            student.addGradeForSubject(subject, grade);
+        }
+    }
+    
+    /**
+     * Replay a journaled category grade; a plain gradebook keeps it as an overall grade
+     * @param id Student's ID
+     * @param category The category name
+     * @param grade The grade
+     */
+    void replayCategoryGrade(int id, String category, double grade) {
+        replayGrade(id, grade);
+    }
+    
+    /**
+     * Replay a journaled category weight; a plain gradebook has no weights
+     * @param category The category name
+     * @param weight The weight
+     */
+    void replayCategoryWeight(String category, double weight) {
+    }
+    
     /**
      * Export detailed report to file
      * @param filename The filename to export to
      * @return true if export was successful, false otherwise
      */
-    public boolean exportReport(String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            writer.println("=== GRADEBOOK REPORT ===");
-            writer.println("Generated on: " + java.time.LocalDateTime.now());
-            writer.println();
-            
-            // Class statistics
-            if (!students.isEmpty()) {
-                double totalAverage = 0.0;
-                for (Student student : students) {
-                    totalAverage += student.getAverage();
-                }
-                double classAverage = totalAverage / students.size();
-                writer.printf("Class Average: %.2f\n", classAverage);
-                writer.printf("Number of Students: %d\n", students.size());
-                writer.println();
-            }
-            
-            // Student details
-            for (int i = 0; i < students.size(); i++) {
-                writer.println((i + 1) + ". " + students.get(i).toDetailedString());
-                writer.println("---");
-            }
-            
-            System.out.println("Report exported to " + filename);
+    public synchronized boolean exportReport(String filename) {
+        try {
+            new ReportRenderer(students, gradeStore, subjectTable, parallelRanking)
+                    .write(Path.of(filename), getClassAverage());
+            listener.reportExported(filename);
+            return true;
+        } catch (IOException e) {
+            listener.error("Error exporting report: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Export every student, or every grade, as CSV or JSON Lines for other systems
+     * @param filename The filename to export to
+     * @param format CSV or JSON Lines
+     * @param records One line per student or one line per grade
+     * @return true if export was successful, false otherwise
+     */
+    public synchronized boolean exportData(String filename, GradeExporter.Format format, GradeExporter.Records records) {
+        try {
+            new GradeExporter(this, format, records).export(Path.of(filename));
+            listener.reportExported(filename);
             return true;
         } catch (IOException e) {
-            System.out.println("Error exporting report: " + e.getMessage());
+            listener.error("Error exporting data: " + e.getMessage());
             return false;
         }
     }
@@ -341,6 +1177,71 @@ public class Gradebook {
         return students.size();
     }
     
+    /**
+     * Get the pool settings used for ranking and statistics
+     * @return The parallel ranking settings
+     */
+    public ParallelRanking getParallelRanking() {
+        return parallelRanking;
+    }
+    
+    /**
+     * Set the pool and size threshold used for ranking and statistics
+     * @param parallelRanking The parallel ranking settings
+     */
+    public void setParallelRanking(ParallelRanking parallelRanking) {
+        this.parallelRanking = parallelRanking;
+    }
+    
+    /**
+     * Get the listener that receives this gradebook's events
+     * @return The listener, GradebookListener.NONE if none was set
+     */
+    public GradebookListener getListener() {
+        return listener;
+    }
+    
+    /**
+     * Set the listener that receives this gradebook's events
+     * @param listener The listener, or null to ignore events
+     */
+    public void setListener(GradebookListener listener) {
+        this.listener = listener != null ? listener : GradebookListener.NONE;
+    }
+    
+    /**
+     * Get the symbol table that assigns subject IDs for this gradebook
+     * @return The shared subject table
+     */
+    public SymbolTable getSubjectTable() {
+        return subjectTable;
+    }
+    
+    /**
+     * Get the symbol table that assigns category IDs for this gradebook
+     * @return The shared category table
+     */
+    public SymbolTable getCategoryTable() {
+        return categoryTable;
+    }
+    
+    /**
+     * Get the columnar store that holds every grade in this gradebook
+     * @return The shared grade store
+     */
+    public GradeStore getGradeStore() {
+        return gradeStore;
+    }
+    
+    /**
+     * Get the student at a position in the gradebook, in the order added
+     * @param position Position from 0 to getStudentCount() - 1
+     * @return The student at that position
+     */
+    public Student getStudentAt(int position) {
+        return students.get(position);
+    }
+    
     /**
      * Get all students
      * @return List of all students
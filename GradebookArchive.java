@@ -0,0 +1,573 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a binary gradebook file (version 2 or later) that answers
+ * queries straight from the memory-mapped file
+ * Opening reads only the header and maps the file; students are looked up
+ * through the on-disk directory, ID index and rank order, so no Student
+ * objects or grade lists are built unless one student is asked for. Version 3
+ * files also carry subjects and categories, which loading a Gradebook decodes
+ * from here one student at a time. A gradebook's own data file is read into
+ * heap buffers instead of being mapped, since the file is replaced on every
+ * save and a live mapping would keep the old file (and, on Windows, block
+ * the replace).
+ */
+public class GradebookArchive implements Closeable {
+    // FileChannel.map is limited to 2 GB per buffer, so large files are mapped in chunks
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    
+    private String filename;
+    private ByteBuffer[] chunks;
+    private long fileSize;
+    
+    private int version;
+    private int studentCount;
+    private long directoryOffset;
+    private int directoryEntrySize;
+    private long idIndexOffset;
+    private long rankOffset;
+    private long totalGrades;
+    private double sumOfAverages;
+    private long symbolTablesOffset;
+    private long journalCheckpoint;
+    
+    /**
+     * Map a binary gradebook file for querying
+     * @param filename The file to open
+     * @throws IOException if the file cannot be read or is not a version 2 gradebook file
+     */
+    public GradebookArchive(String filename) throws IOException {
+        this(filename, true);
+    }
+    
+    /**
+     * Open a binary gradebook file for querying
+     * @param filename The file to open
+     * @param map true to map the file, false to read it into heap buffers so
+     *            that nothing refers to the file once the constructor returns
+     * @throws IOException if the file cannot be read or is not a version 2 gradebook file
+     */
+    public GradebookArchive(String filename, boolean map) throws IOException {
+        this.filename = filename;
+        Path path = Paths.get(filename);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            int chunkCount = (int) ((fileSize + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+            chunks = new ByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                long length = Math.min(CHUNK_SIZE, fileSize - start);
+                chunks[i] = (map ? channel.map(FileChannel.MapMode.READ_ONLY, start, length)
+                        : readChunk(channel, start, (int) length)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        // The mapping stays valid after the channel is closed
+        
+        // The magic number is written big-endian
+        if (fileSize < 8 || Integer.reverseBytes(getInt(0)) != BinaryGradebookFile.MAGIC) {
+            throw new IOException("Not a binary gradebook file");
+        }
+        version = getInt(4);
+        if (version < 2) {
+            throw new IOException("Gradebook file version " + version + " has no query index; save it again first");
+        }
+        if (version > BinaryGradebookFile.VERSION) {
+            throw new IOException("Unsupported gradebook file version " + version);
+        }
+        if (fileSize < (version >= 4 ? BinaryGradebookFile.HEADER_SIZE : BinaryGradebookFile.VERSION_3_HEADER_SIZE)) {
+            throw new IOException("Gradebook file is truncated");
+        }
+        
+        studentCount = getInt(8);
+        directoryOffset = getLong(32);
+        idIndexOffset = getLong(40);
+        rankOffset = getLong(48);
+        totalGrades = getLong(56);
+        sumOfAverages = getDouble(64);
+        symbolTablesOffset = version >= 3 ? getLong(72) : 0;
+        journalCheckpoint = version >= 4 ? getLong(80) : 0;
+        directoryEntrySize = version >= 3 ? BinaryGradebookFile.DIRECTORY_ENTRY_SIZE
+                : BinaryGradebookFile.VERSION_2_DIRECTORY_ENTRY_SIZE;
+        
+        if (studentCount < 0
+                || directoryOffset + (long) studentCount * directoryEntrySize > fileSize
+                || symbolTablesOffset > fileSize
+                || idIndexOffset + (long) studentCount * BinaryGradebookFile.ID_INDEX_ENTRY_SIZE > fileSize
+                || rankOffset + (long) studentCount * 4 > fileSize) {
+            throw new IOException("Gradebook file is truncated");
+        }
+    }
+    
+    /**
+     * Display students ranked by average grade, in the same format as Gradebook.rankStudents
+     */
+    public void rankStudents() {
+        if (studentCount == 0) {
+            System.out.println("No students to rank.");
+            return;
+        }
+        
+        StringBuilder out = new StringBuilder();
+        out.append("\n=== STUDENT RANKINGS (by average grade) ===\n");
+        for (int i = 0; i < studentCount; i++) {
+            int position = getPositionAtRank(i);
+            double average = getAverage(position);
+            out.append(String.format("%d. %s (ID: %d) - Average: %.2f (%s)",
+                    i + 1, getName(position), getId(position), average, Student.letterGradeFor(average)));
+            out.append('\n');
+            if (out.length() >= 1 << 16) {
+                System.out.print(out);
+                out.setLength(0);
+            }
+        }
+        out.append("==========================================\n");
+        System.out.println(out);
+    }
+    
+    /**
+     * Display class statistics, in the same format as Gradebook.displayClassStatistics
+     */
+    public void displayClassStatistics() {
+        if (studentCount == 0) {
+            System.out.println("No students to analyze.");
+            return;
+        }
+        
+        System.out.println("\n=== CLASS STATISTICS ===");
+        System.out.printf("Number of students: %d\n", studentCount);
+        System.out.printf("Total grades entered: %d\n", getTotalGradeCount());
+        System.out.printf("Class average: %.2f\n", getClassAverage());
+        System.out.printf("Highest average: %.2f\n", getHighestAverage());
+        System.out.printf("Lowest average: %.2f\n", getLowestAverage());
+        System.out.println("=======================\n");
+    }
+    
+    /**
+     * Find a student by their ID and read that one student from the file
+     * From version 3 each grade keeps its subject, so the student has the
+     * same subject breakdown as in the gradebook that saved the file.
+     * @param id The student's ID
+     * @return A standalone Student with its grades, or null if not found
+     */
+    public Student findStudentById(int id) {
+        int position = findPosition(id);
+        if (position < 0) {
+            return null;
+        }
+        Student student = new Student(getName(position), id);
+        if (version < 3) {
+            for (double grade : getGrades(position)) {
+                student.addGrade(grade);
+            }
+            return student;
+        }
+        
+        int count = getGradeCount(position);
+        double[] values = new double[count];
+        int[] subjects = new int[count];
+        int[] categories = new int[count];
+        readGradeRows(position, values, subjects, categories);
+        String[] subjectNames = getSubjectNames();
+        for (int i = 0; i < count; i++) {
+            if (subjects[i] != GradeStore.NONE) {
+                student.addGradeForSubject(subjectNames[subjects[i]], values[i]);
+            } else {
+                student.addGrade(values[i]);
+            }
+        }
+        return student;
+    }
+    
+    /**
+     * Find a student's position with a binary search of the ID index
+     * @param id The student's ID
+     * @return The position, or -1 if not found
+     */
+    public int findPosition(int id) {
+        int low = 0;
+        int high = studentCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = getInt(idIndexOffset + (long) mid * BinaryGradebookFile.ID_INDEX_ENTRY_SIZE);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return getInt(idIndexOffset + (long) mid * BinaryGradebookFile.ID_INDEX_ENTRY_SIZE + 4);
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Get the number of students in the archive
+     * @return Number of students
+     */
+    public int getStudentCount() {
+        return studentCount;
+    }
+    
+    /**
+     * Get the total number of grades in the archive
+     * @return Number of grades
+     */
+    public long getTotalGradeCount() {
+        return totalGrades;
+    }
+    
+    /**
+     * Get the class average (the mean of the student averages)
+     * @return Class average, 0 if there are no students
+     */
+    public double getClassAverage() {
+        return studentCount == 0 ? 0.0 : sumOfAverages / studentCount;
+    }
+    
+    /**
+     * Get the highest student average
+     * @return Highest average, 0 if there are no students
+     */
+    public double getHighestAverage() {
+        return studentCount == 0 ? 0.0 : getAverage(getPositionAtRank(0));
+    }
+    
+    /**
+     * Get the lowest student average
+     * @return Lowest average, 0 if there are no students
+     */
+    public double getLowestAverage() {
+        return studentCount == 0 ? 0.0 : getAverage(getPositionAtRank(studentCount - 1));
+    }
+    
+    /**
+     * Get the student at a rank
+     * @param rank Rank starting at 0 for the highest average
+     * @return The student's position
+     */
+    public int getPositionAtRank(int rank) {
+        return getInt(rankOffset + (long) rank * 4);
+    }
+    
+    /**
+     * Get a student's ID
+     * @param position The student's position
+     * @return The ID
+     */
+    public int getId(int position) {
+        return getInt(entry(position));
+    }
+    
+    /**
+     * Get a student's number of grades
+     * @param position The student's position
+     * @return Number of grades
+     */
+    public int getGradeCount(int position) {
+        return getInt(entry(position) + 4);
+    }
+    
+    /**
+     * Get a student's average grade
+     * @param position The student's position
+     * @return Average grade, 0 if the student has no grades
+     */
+    public double getAverage(int position) {
+        int count = getGradeCount(position);
+        return count == 0 ? 0.0 : getDouble(entry(position) + 8) / count;
+    }
+    
+    /**
+     * Get the sum of a student's grades
+     * @param position The student's position
+     * @return Sum of the grades
+     */
+    public double getGradeSum(int position) {
+        return getDouble(entry(position) + 8);
+    }
+    
+    /**
+     * Get a student's name
+     * @param position The student's position
+     * @return The name
+     */
+    public String getName(int position) {
+        long nameOffset = getLong(entry(position) + 16);
+        byte[] bytes = new byte[getInt(nameOffset)];
+        getBytes(nameOffset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Get a student's grades in the order they were added
+     * @param position The student's position
+     * @return The grade values
+     */
+    public double[] getGrades(int position) {
+        long blockOffset = getLong(entry(position) + 24);
+        double[] grades = new double[getInt(blockOffset + 4)];
+        for (int i = 0; i < grades.length; i++) {
+            grades[i] = getDouble(blockOffset + 8 + (long) i * 8);
+        }
+        return grades;
+    }
+    
+    /**
+     * Read a student's grades with their subject and category IDs (file IDs)
+     * @param position The student's position
+     * @param values Output for the grade values, with room for getGradeCount(position) entries
+     * @param subjects Output for the subject IDs, or GradeStore.NONE
+     * @param categories Output for the category IDs, or GradeStore.NONE
+     */
+    void readGradeRows(int position, double[] values, int[] subjects, int[] categories) {
+        long blockOffset = getLong(entry(position) + 24);
+        int count = getInt(blockOffset + 4);
+        long at = blockOffset + 8;
+        for (int i = 0; i < count; i++, at += 8) {
+            values[i] = getDouble(at);
+        }
+        for (int i = 0; i < count; i++, at += 4) {
+            subjects[i] = version >= 3 ? getInt(at) : GradeStore.NONE;
+        }
+        for (int i = 0; i < count; i++, at += 4) {
+            categories[i] = version >= 3 ? getInt(at) : GradeStore.NONE;
+        }
+    }
+    
+    /**
+     * Read a student's per-subject or per-category totals
+     * @param position The student's position
+     * @param categories true for the category block, false for the subject block
+     * @param ids Gradebook ID for each ID in the file
+     * @return The totals as slots, in first-use order
+     */
+    GradeSlots readSlots(int position, boolean categories, int[] ids) {
+        GradeSlots slots = new GradeSlots(categories);
+        if (version < 3) {
+            return slots;
+        }
+        
+        long at = getLong(entry(position) + 32);
+        if (categories) {
+            at += 4 + (long) getInt(at) * BinaryGradebookFile.SLOT_ENTRY_SIZE; // skip the subject block
+        }
+        int slotCount = getInt(at);
+        at += 4;
+        for (int i = 0; i < slotCount; i++, at += BinaryGradebookFile.SLOT_ENTRY_SIZE) {
+            slots.addTotals(ids[getInt(at)], getInt(at + 4), getDouble(at + 8));
+        }
+        return slots;
+    }
+    
+    /**
+     * Get the number of the last journal checkpoint the file holds
+     * @return The checkpoint number, or 0 before version 4
+     */
+    public long getJournalCheckpoint() {
+        return journalCheckpoint;
+    }
+    
+    /**
+     * Get the subject names, indexed by the file's subject IDs
+     * @return Subject names, empty before version 3
+     */
+    String[] getSubjectNames() {
+        return version >= 3 ? readNames(symbolTablesOffset) : new String[0];
+    }
+    
+    /**
+     * Get the category names, indexed by the file's category IDs
+     * @return Category names, empty before version 3
+     */
+    String[] getCategoryNames() {
+        return version >= 3 ? readNames(skipNames(symbolTablesOffset)) : new String[0];
+    }
+    
+    /**
+     * Get the category weights, indexed by the file's category IDs
+     * @return Weights, NaN for a category without a weight
+     */
+    double[] getCategoryWeights() {
+        if (version < 3) {
+            return new double[0];
+        }
+        long at = skipNames(symbolTablesOffset);
+        double[] weights = new double[getInt(at)];
+        at = skipNames(at);
+        for (int i = 0; i < weights.length; i++, at += 8) {
+            weights[i] = getDouble(at);
+        }
+        return weights;
+    }
+    
+    /**
+     * Read a name list: count, then length and UTF-8 bytes per name
+     * @param offset File offset of the list
+     * @return The names
+     */
+    private String[] readNames(long offset) {
+        String[] names = new String[getInt(offset)];
+        long at = offset + 4;
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = new byte[getInt(at)];
+            getBytes(at + 4, bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+            at += 4 + bytes.length;
+        }
+        return names;
+    }
+    
+    /**
+     * Find the end of a name list
+     * @param offset File offset of the list
+     * @return File offset just past the list
+     */
+    private long skipNames(long offset) {
+        int count = getInt(offset);
+        long at = offset + 4;
+        for (int i = 0; i < count; i++) {
+            at += 4 + getInt(at);
+        }
+        return at;
+    }
+    
+    /**
+     * Get the archived file name
+     * @return The file name
+     */
+    public String getFilename() {
+        return filename;
+    }
+    
+    /**
+     * Release the mapping; the memory is returned once the buffers are collected
+     */
+    @Override
+    public void close() {
+        chunks = new ByteBuffer[0];
+        studentCount = 0;
+    }
+    
+    /**
+     * Read part of a file into a heap buffer
+     * @param channel The open file
+     * @param start File offset to read from
+     * @param length Number of bytes to read
+     * @return The bytes, positioned at the start
+     * @throws IOException if the file cannot be read or ends early
+     */
+    private static ByteBuffer readChunk(FileChannel channel, long start, int length) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(length);
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk, start + chunk.position()) < 0) {
+                throw new IOException("Gradebook file is truncated");
+            }
+        }
+        return chunk.flip();
+    }
+    
+    /**
+     * Get the file offset of a student's directory entry
+     * @param position The student's position
+     * @return Offset of the entry
+     */
+    private long entry(int position) {
+        if (position < 0 || position >= studentCount) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of range");
+        }
+        return directoryOffset + (long) position * directoryEntrySize;
+    }
+    
+    private int getInt(long offset) {
+        ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+        int at = (int) (offset & (CHUNK_SIZE - 1));
+        if (at + 4 <= chunk.limit()) {
+            return chunk.getInt(at);
+        }
+        return (int) readAcrossChunks(offset, 4);
+    }
+    
+    private long getLong(long offset) {
+        ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+        int at = (int) (offset & (CHUNK_SIZE - 1));
+        if (at + 8 <= chunk.limit()) {
+            return chunk.getLong(at);
+        }
+        return readAcrossChunks(offset, 8);
+    }
+    
+    private double getDouble(long offset) {
+        return Double.longBitsToDouble(getLong(offset));
+    }
+    
+    /**
+     * Assemble a little-endian value that straddles two chunks
+     * @param offset File offset of the value
+     * @param size Number of bytes
+     * @return The value
+     */
+    private long readAcrossChunks(long offset, int size) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value |= (getByte(offset + i) & 0xFFL) << (8 * i);
+        }
+        return value;
+    }
+    
+    private byte getByte(long offset) {
+        return chunks[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & (CHUNK_SIZE - 1)));
+    }
+    
+    private void getBytes(long offset, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            long at = offset + copied;
+            ByteBuffer chunk = chunks[(int) (at >>> CHUNK_SHIFT)];
+            int start = (int) (at & (CHUNK_SIZE - 1));
+            int length = Math.min(bytes.length - copied, chunk.limit() - start);
+            chunk.get(start, bytes, copied, length);
+            copied += length;
+        }
+    }
+    
+    /**
+     * Query an archived gradebook file from the command line
+     * Usage: java GradebookArchive FILE rank|stats|find ID
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java GradebookArchive FILE rank|stats|find ID");
+            return;
+        }
+        
+        try (GradebookArchive archive = new GradebookArchive(args[0])) {
+            switch (args[1]) {
+                case "rank":
+                    archive.rankStudents();
+                    break;
+                case "stats":
+                    archive.displayClassStatistics();
+                    break;
+                case "find":
+                    Student student = args.length > 2 ? archive.findStudentById(Integer.parseInt(args[2])) : null;
+                    System.out.println(student != null ? student.toDetailedString() : "Student not found!");
+                    break;
+                default:
+                    System.out.println("Unknown query: " + args[1]);
+            }
+        } catch (IOException e) {
+            System.out.println("Error opening archive: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid student ID: " + args[2]);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Receives the events a gradebook reports as it changes
+ * Every method does nothing by default, so library code that does not care
+ * about messages pays nothing for them and only overrides what it needs.
+ * The apps use ConsoleGradebookListener; AsyncGradebookLogger prints the same
+ * messages from a background thread.
+ */
+public interface GradebookListener {
+    /** Listener that ignores every event, the default for a gradebook */
+    GradebookListener NONE = new GradebookListener() {
+    };
+    
+    /**
+     * Called after a student is added
+     * @param name Student's name
+     * @param id Student's ID
+     */
+    default void studentAdded(String name, int id) {
+    }
+    
+    /**
+     * Called when a student cannot be added because the ID is taken
+     * @param id The duplicate ID
+     */
+    default void duplicateStudent(int id) {
+    }
+    
+    /**
+     * Called when a grade is added for an ID that has no student
+     * @param id The unknown ID
+     */
+    default void studentNotFound(int id) {
+    }
+    
+    /**
+     * Called after a grade is added
+     * @param student The student
+     * @param label The subject or category name, or null for an overall grade
+     * @param grade The grade
+     */
+    default void gradeAdded(Student student, String label, double grade) {
+    }
+    
+    /**
+     * Called when a grade outside 0-100 is rejected
+     * @param grade The rejected grade
+     */
+    default void invalidGrade(double grade) {
+    }
+    
+    /**
+     * Called after a category weight is set
+     * @param category The category name
+     * @param weight The weight (0.0 to 1.0)
+     */
+    default void categoryWeightSet(String category, double weight) {
+    }
+    
+    /**
+     * Called when a category weight outside 0.0-1.0 is rejected
+     * @param category The category name
+     * @param weight The rejected weight
+     */
+    default void invalidCategoryWeight(String category, double weight) {
+    }
+    
+    /**
+     * Called after the gradebook is saved
+     * @param filename The file written
+     */
+    default void dataSaved(String filename) {
+    }
+    
+    /**
+     * Called when the data file to load does not exist
+     * @param filename The missing file
+     */
+    default void dataFileMissing(String filename) {
+    }
+    
+    /**
+     * Called after a data file is loaded
+     * @param filename The file read
+     * @param studentCount Number of students in the gradebook
+     */
+    default void dataLoaded(String filename, int studentCount) {
+    }
+    
+    /**
+     * Called after unsaved changes are replayed from the journal
+     * @param filename The journal file
+     * @param count Number of changes replayed
+     */
+    default void changesRecovered(String filename, int count) {
+    }
+    
+    /**
+     * Called after a report is exported
+     * @param filename The file written
+     */
+    default void reportExported(String filename) {
+    }
+    
+    /**
+     * Called when a problem in the input is skipped
+     * @param message Description of the problem
+     */
+    default void warning(String message) {
+    }
+    
+    /**
+     * Called when an operation fails
+     * @param message Description of the failure
+     */
+    default void error(String message) {
+    }
+}
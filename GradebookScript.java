@@ -0,0 +1,302 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * Runs gradebook commands from a script instead of the interactive menus
+ * One command per line; blank lines and lines starting with # are skipped,
+ * and names containing spaces can be written in double quotes:
+ *
+ *   add-student <id> <name>
+ *   grade <id> <grade>
+ *   subject-grade <id> <subject> <grade>
+ *   cat-grade <id> <category> <grade>      (enhanced gradebook only)
+ *   weight <category> <weight>             (enhanced gradebook only)
+ *   rank [weighted]
+ *   stats | distribution | list
+ *   export <file>
+ *   export-data <file> <csv|jsonl> <students|grades>
+ *
+ * Grade lines are checked as they are read, so errors name the script line,
+ * and are then collected into a GradeBatch. The batch is added with one
+ * addGrades call when a command that reads grades comes up or the script
+ * ends, so a run of grade lines costs one pass over the gradebook whatever
+ * students are added in between.
+ */
+public class GradebookScript {
+    private final Gradebook gradebook;
+    private final WeightedGradebook weightedGradebook;
+    private final GradeBatch batch;
+    private int lineNumber;
+    private int errorCount;
+    
+    /**
+     * Constructor for GradebookScript
+     * @param gradebook The gradebook the commands change
+     */
+    public GradebookScript(Gradebook gradebook) {
+        this.gradebook = gradebook;
+        this.weightedGradebook = gradebook instanceof WeightedGradebook ? (WeightedGradebook) gradebook : null;
+        this.batch = new GradeBatch();
+    }
+    
+    /**
+     * Replace System.out with a block-buffered console stream, so scripts
+     * with many commands do not write the console a line at a time
+     * The caller flushes System.out when the script is done.
+     */
+    public static void bufferConsole() {
+        System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false));
+    }
+    
+    /**
+     * Run a script file, or standard input
+     * @param source The script's filename, or "-" for standard input
+     * @return Number of lines that failed
+     */
+    public int run(String source) {
+        try (BufferedReader reader = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(source))) {
+            return run(reader);
+        } catch (IOException e) {
+            System.out.println("Error reading script: " + e.getMessage());
+            return errorCount + 1;
+        }
+    }
+    
+    /**
+     * Run every command from a reader
+     * @param reader The script
+     * @return Number of lines that failed
+     * @throws IOException if the script cannot be read
+     */
+    public int run(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            ArrayList<String> words = split(line);
+            if (words.isEmpty() || words.get(0).startsWith("#")) {
+                continue;
+            }
+            try {
+                execute(words);
+            } catch (NumberFormatException e) {
+                fail("invalid number in \"" + line.trim() + "\"");
+            }
+        }
+        flushGrades();
+        return errorCount;
+    }
+    
+    /**
+     * Run one command
+     * @param words The command and its arguments
+     */
+    private void execute(ArrayList<String> words) {
+        String command = words.get(0);
+        switch (command) {
+            case "add-student":
+                if (expect(words, 3)) {
+                    gradebook.addStudent(String.join(" ", words.subList(2, words.size())),
+                            Integer.parseInt(words.get(1)));
+                }
+                return;
+            case "grade":
+                if (expect(words, 3)) {
+                    stageGrade(Integer.parseInt(words.get(1)), null, null, Double.parseDouble(words.get(2)));
+                }
+                return;
+            case "subject-grade":
+                if (expect(words, 4)) {
+                    stageGrade(Integer.parseInt(words.get(1)), words.get(2), null, Double.parseDouble(words.get(3)));
+                }
+                return;
+            case "cat-grade":
+                if (expect(words, 4) && expectWeighted(command)) {
+                    stageGrade(Integer.parseInt(words.get(1)), null, words.get(2), Double.parseDouble(words.get(3)));
+                }
+                return;
+            default:
+                break;
+        }
+        
+        // Every other command reads or reweighs grades, so add the pending ones first
+        flushGrades();
+        switch (command) {
+            case "weight":
+                if (expect(words, 3) && expectWeighted(command)) {
+                    weightedGradebook.setCategoryWeight(words.get(1), Double.parseDouble(words.get(2)));
+                }
+                break;
+            case "rank":
+                if (words.size() > 1 && words.get(1).equals("weighted")) {
+                    if (expectWeighted("rank weighted")) {
+                        weightedGradebook.rankStudentsByWeightedAverage();
+                    }
+                } else {
+                    gradebook.rankStudents();
+                }
+                break;
+            case "stats":
+                gradebook.displayClassStatistics();
+                break;
+            case "distribution":
+                gradebook.displayGradeDistribution();
+                break;
+            case "list":
+                gradebook.displayAll();
+                break;
+            case "export":
+                if (expect(words, 2)) {
+                    gradebook.exportReport(words.get(1));
+                }
+                break;
+            case "export-data":
+                if (expect(words, 4)) {
+                    exportData(words.get(1), words.get(2), words.get(3));
+                }
+                break;
+            default:
+                fail("unknown command \"" + command + "\"");
+        }
+    }
+    
+    /**
+     * Check a grade line and add it to the pending batch
+     * @param id Student's ID
+     * @param subject The subject name, or null
+     * @param category The category name, or null
+     * @param grade The grade
+     */
+    private void stageGrade(int id, String subject, String category, double grade) {
+        // Students are added as their lines are read, so this matches running the lines one at a time
+        if (gradebook.getPositionOf(id) < 0) {
+            fail("student with ID " + id + " not found");
+        } else if (!(grade >= 0 && grade <= 100)) {
+            fail("grade " + grade + " is not between 0 and 100");
+        } else {
+            // Interned under the gradebook's lock, as autosave snapshots read the symbol tables
+            synchronized (gradebook) {
+                batch.add(id, subject != null ? gradebook.getSubjectTable().intern(subject) : GradeStore.NONE,
+                        category != null ? gradebook.getCategoryTable().intern(category) : GradeStore.NONE, grade);
+            }
+        }
+    }
+    
+    /**
+     * Add the pending grades to the gradebook
+     */
+    private void flushGrades() {
+        if (batch.size() == 0) {
+            return;
+        }
+        int added = gradebook.addGrades(batch).cardinality();
+        System.out.println(added + (added == 1 ? " grade" : " grades") + " added");
+        batch.clear();
+    }
+    
+    /**
+     * Run an export-data command
+     * @param filename The file to write
+     * @param format csv or jsonl
+     * @param records students or grades
+     */
+    private void exportData(String filename, String format, String records) {
+        GradeExporter.Format exportFormat;
+        if (format.equals("csv")) {
+            exportFormat = GradeExporter.Format.CSV;
+        } else if (format.equals("jsonl")) {
+            exportFormat = GradeExporter.Format.JSON_LINES;
+        } else {
+            fail("unknown export format \"" + format + "\" (expected csv or jsonl)");
+            return;
+        }
+        
+        GradeExporter.Records exportRecords;
+        if (records.equals("students")) {
+            exportRecords = GradeExporter.Records.STUDENTS;
+        } else if (records.equals("grades")) {
+            exportRecords = GradeExporter.Records.GRADES;
+        } else {
+            fail("unknown export records \"" + records + "\" (expected students or grades)");
+            return;
+        }
+        gradebook.exportData(filename, exportFormat, exportRecords);
+    }
+    
+    /**
+     * Check that a command has at least a number of words
+     * @param words The command and its arguments
+     * @param count Number of words needed, including the command
+     * @return true if there are enough
+     */
+    private boolean expect(ArrayList<String> words, int count) {
+        if (words.size() < count) {
+            fail(words.get(0) + " needs " + (count - 1) + (count == 2 ? " argument" : " arguments"));
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Check that the gradebook has weighted categories
+     * @param command The command being run
+     * @return true if it does
+     */
+    private boolean expectWeighted(String command) {
+        if (weightedGradebook == null) {
+            fail(command + " needs the enhanced gradebook");
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Report a failed line
+     * @param message What went wrong
+     */
+    private void fail(String message) {
+        errorCount++;
+        System.out.println("Line " + lineNumber + ": " + message);
+    }
+    
+    /**
+     * Split a line into words, keeping double-quoted text together
+     * @param line The line
+     * @return The words
+     */
+    static ArrayList<String> split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = line.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = length;
+                }
+                words.add(line.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int end = i + 1;
+                while (end < length && !Character.isWhitespace(line.charAt(end))) {
+                    end++;
+                }
+                words.add(line.substring(i, end));
+                i = end;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,549 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Embedded HTTP server answering gradebook queries as JSON
+ * Binds to the loopback address only, for a portal or tool on the same host:
+ *
+ *   GET  /students/{id}                   name, averages, letters, ranks and breakdowns
+ *   GET  /statistics                      class statistics and letter-grade counts
+ *   GET  /rankings?by=&order=&limit=      by average, weighted, subject:NAME or category:NAME
+ *   POST /grades  id=&grade=[&subject=|&category=]   add a grade (query or form body)
+ *
+ * Requests run on a virtual thread each when the JDK has them (Java 21+),
+ * otherwise on a small fixed pool. Statistics and rankings walk every
+ * student, so concurrent identical requests are coalesced: the first one
+ * computes the response and the others wait for it. The gradebook's change
+ * count is part of the key, so a request that arrives after a change never
+ * gets a response computed before it.
+ */
+public class GradebookServer {
+    /** Port used when none is given */
+    public static final int DEFAULT_PORT = 8080;
+    
+    private static final int BACKLOG = 1024;
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int AVERAGE_DECIMALS = 4;
+    
+    private final Gradebook gradebook;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final FixedPointFormat numbers;
+    
+    // Responses being computed, by endpoint, query and change count
+    private final ConcurrentHashMap<String, CompletableFuture<Response>> inFlight;
+    
+    /**
+     * Status code and JSON body of a response
+     */
+    private static final class Response {
+        final int status;
+        final byte[] body;
+        
+        Response(int status, String json) {
+            this.status = status;
+            this.body = json.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Parse a port number given on the command line
+     * @param text The argument
+     * @return The port, or -1 if it is not a number from 0 to 65535
+     */
+    public static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Constructor for GradebookServer on the loopback address
+     * @param gradebook The gradebook to serve
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public GradebookServer(Gradebook gradebook, int port) throws IOException {
+        this.gradebook = gradebook;
+        this.numbers = new FixedPointFormat();
+        this.inFlight = new ConcurrentHashMap<>();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/students/", exchange -> handle(exchange, "GET", this::student));
+        server.createContext("/statistics", exchange -> handle(exchange, "GET", this::statistics));
+        server.createContext("/rankings", exchange -> handle(exchange, "GET", this::rankings));
+        server.createContext("/grades", exchange -> handle(exchange, "POST", this::addGrade));
+    }
+    
+    /**
+     * Create the executor requests run on: one virtual thread per request
+     * where available, looked up by reflection so the code still builds and
+     * runs on Java 17
+     * @return The executor
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Missing before Java 19, and a preview feature on 19 and 20
+            return Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        }
+    }
+    
+    /**
+     * Start accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+    
+    /**
+     * Stop accepting requests, wait briefly for running ones and release the threads
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+    
+    /**
+     * Get the port the server listens on
+     * @return The bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Handles one endpoint's requests
+     */
+    private interface Endpoint {
+        /**
+         * Answer a request
+         * @param path The request path
+         * @param parameters Decoded query and form parameters
+         * @return The response
+         */
+        Response answer(String path, HashMap<String, String> parameters);
+    }
+    
+    /**
+     * Check the path and method, run an endpoint and send its response
+     * Contexts ending in "/" take any path below them; the others only
+     * their own path, since HttpServer matches contexts by prefix.
+     * @param exchange The request
+     * @param method The method the endpoint accepts
+     * @param endpoint The endpoint
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        Response response;
+        String path = exchange.getRequestURI().getPath();
+        String context = exchange.getHttpContext().getPath();
+        try {
+            if (!context.endsWith("/") && !path.equals(context)) {
+                response = error(404, "No such endpoint: " + path);
+            } else if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                response = error(405, "Use " + method);
+            } else {
+                HashMap<String, String> parameters = new HashMap<>();
+                parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+                if (method.equals("POST")) {
+                    parseParameters(readBody(exchange.getRequestBody()), parameters);
+                }
+                response = endpoint.answer(path, parameters);
+            }
+        } catch (NumberFormatException e) {
+            response = error(400, "Invalid number: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            response = error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            response = error(500, "Internal error: " + e);
+        }
+        
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, response.body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response.body);
+        }
+    }
+    
+    /**
+     * GET /students/{id}
+     * @param path The request path
+     * @param parameters Unused
+     * @return The student, or 404
+     */
+    private Response student(String path, HashMap<String, String> parameters) {
+        int id = Integer.parseInt(path.substring("/students/".length()));
+        StringBuilder json = new StringBuilder(256);
+        synchronized (gradebook) {
+            int position = gradebook.getPositionOf(id);
+            if (position < 0) {
+                return error(404, "Student with ID " + id + " not found");
+            }
+            Student student = gradebook.getStudentAt(position);
+            json.append("{\"id\":");
+            numbers.appendInt(json, id);
+            json.append(",\"name\":");
+            appendString(json, student.getName());
+            json.append(",\"grade_count\":");
+            numbers.appendInt(json, student.getGradeCount());
+            appendScore(json, "average", student.getAverage());
+            json.append(",\"letter\":\"").append(Student.letterGradeFor(student.getAverage())).append('"');
+            json.append(",\"rank\":");
+            numbers.appendInt(json, gradebook.getRankOf(id));
+            if (gradebook instanceof WeightedGradebook) {
+                double weightedAverage = gradebook.getWeightedAverageAt(position);
+                appendScore(json, "weighted_average", weightedAverage);
+                json.append(",\"weighted_letter\":\"").append(Student.letterGradeFor(weightedAverage)).append('"');
+                json.append(",\"weighted_rank\":");
+                numbers.appendInt(json, ((WeightedGradebook) gradebook).getWeightedRankOf(id));
+            }
+            appendAverages(json, "subjects", student.getSubjectSlots(), gradebook.getSubjectTable());
+            GradeSlots categories = gradebook.getCategorySlots(position);
+            if (categories != null) {
+                appendAverages(json, "categories", categories, gradebook.getCategoryTable());
+            }
+            json.append('}');
+        }
+        return new Response(200, json.toString());
+    }
+    
+    /**
+     * GET /statistics, coalesced
+     * @param path The request path
+     * @param parameters Unused
+     * @return The class statistics
+     */
+    private Response statistics(String path, HashMap<String, String> parameters) {
+        return coalesce("statistics", () -> {
+            StringBuilder json = new StringBuilder(256);
+            synchronized (gradebook) {
+                json.append("{\"student_count\":");
+                numbers.appendInt(json, gradebook.getStudentCount());
+                json.append(",\"total_grades\":");
+                numbers.appendInt(json, gradebook.getTotalGradeCount());
+                json.append(",\"class_average\":");
+                numbers.appendFixed(json, gradebook.getClassAverage(), AVERAGE_DECIMALS);
+                json.append(",\"highest_average\":");
+                numbers.appendFixed(json, gradebook.getHighestAverage(), AVERAGE_DECIMALS);
+                json.append(",\"lowest_average\":");
+                numbers.appendFixed(json, gradebook.getLowestAverage(), AVERAGE_DECIMALS);
+                json.append(",\"letter_counts\":");
+                appendLetterCounts(json, gradebook.getLetterGradeCounts());
+                if (gradebook instanceof WeightedGradebook) {
+                    json.append(",\"weighted_letter_counts\":");
+                    appendLetterCounts(json, ((WeightedGradebook) gradebook).getWeightedLetterGradeCounts());
+                }
+                json.append('}');
+            }
+            return new Response(200, json.toString());
+        });
+    }
+    
+    /**
+     * GET /rankings?by=average|weighted|subject:NAME|category:NAME&order=top|bottom&limit=N, coalesced
+     * @param path The request path
+     * @param parameters by, order and limit, all optional
+     * @return The ranked students with their scores
+     */
+    private Response rankings(String path, HashMap<String, String> parameters) {
+        String by = parameters.getOrDefault("by", "average");
+        String order = parameters.getOrDefault("order", "top");
+        int limit = Integer.parseInt(parameters.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT)));
+        GradeMetric metric = parseMetric(by);
+        if (!order.equals("top") && !order.equals("bottom")) {
+            throw new IllegalArgumentException("order must be top or bottom");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        
+        return coalesce("rankings?" + by + "&" + order + "&" + limit, () -> {
+            StringBuilder json = new StringBuilder(64 + Math.min(limit, gradebook.getStudentCount()) * 64);
+            synchronized (gradebook) {
+                ArrayList<Student> students = order.equals("top")
+                        ? gradebook.topK(limit, metric) : gradebook.bottomK(limit, metric);
+                json.append("{\"by\":");
+                appendString(json, by);
+                json.append(",\"order\":");
+                appendString(json, order);
+                json.append(",\"students\":[");
+                for (int i = 0; i < students.size(); i++) {
+                    Student student = students.get(i);
+                    json.append(i == 0 ? "{\"id\":" : ",{\"id\":");
+                    numbers.appendInt(json, student.getId());
+                    json.append(",\"name\":");
+                    appendString(json, student.getName());
+                    appendScore(json, "score", scoreOf(metric, gradebook.getPositionOf(student.getId())));
+                    json.append('}');
+                }
+                json.append("]}");
+            }
+            return new Response(200, json.toString());
+        });
+    }
+    
+    /**
+     * POST /grades with id, grade and optionally subject or category
+     * @param path The request path
+     * @param parameters The grade's fields
+     * @return The student's new totals, 404 if not found or 400 if invalid
+     */
+    private Response addGrade(String path, HashMap<String, String> parameters) {
+        String idText = parameters.get("id");
+        String gradeText = parameters.get("grade");
+        if (idText == null || gradeText == null) {
+            throw new IllegalArgumentException("id and grade are required");
+        }
+        int id = Integer.parseInt(idText);
+        double grade = Double.parseDouble(gradeText);
+        String subject = parameters.get("subject");
+        String category = parameters.get("category");
+        if (subject != null && category != null) {
+            throw new IllegalArgumentException("A grade can have a subject or a category, but not both");
+        }
+        if (category != null && !(gradebook instanceof WeightedGradebook)) {
+            throw new IllegalArgumentException("This gradebook has no categories");
+        }
+        if (!(grade >= 0 && grade <= 100)) {
+            throw new IllegalArgumentException("Grade must be between 0 and 100");
+        }
+        
+        StringBuilder json = new StringBuilder(128);
+        synchronized (gradebook) {
+            int position = gradebook.getPositionOf(id);
+            if (position < 0) {
+                return error(404, "Student with ID " + id + " not found");
+            }
+            // One-row batch: validated above, journaled, and silent like the other bulk paths
+            GradeBatch batch = new GradeBatch(1);
+            batch.add(id, subject != null ? gradebook.getSubjectTable().intern(subject) : GradeStore.NONE,
+                    category != null ? gradebook.getCategoryTable().intern(category) : GradeStore.NONE, grade);
+            gradebook.addGrades(batch);
+            
+            Student student = gradebook.getStudentAt(position);
+            json.append("{\"id\":");
+            numbers.appendInt(json, id);
+            json.append(",\"grade_count\":");
+            numbers.appendInt(json, student.getGradeCount());
+            appendScore(json, "average", student.getAverage());
+            if (gradebook instanceof WeightedGradebook) {
+                appendScore(json, "weighted_average", gradebook.getWeightedAverageAt(position));
+            }
+            json.append('}');
+        }
+        return new Response(201, json.toString());
+    }
+    
+    /**
+     * Compute a response once for every concurrent request with the same key
+     * @param key The endpoint and its parameters
+     * @param compute Builds the response
+     * @return The response
+     */
+    private Response coalesce(String key, Supplier<Response> compute) {
+        String flightKey = key + "@" + gradebook.getChangeCount();
+        CompletableFuture<Response> mine = new CompletableFuture<>();
+        CompletableFuture<Response> running = inFlight.putIfAbsent(flightKey, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                // Fail the same way as the request that computed it
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Response response = compute.get();
+            mine.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, mine);
+        }
+    }
+    
+    /**
+     * Parse a metric name
+     * @param by average, weighted, subject:NAME or category:NAME
+     * @return The metric
+     */
+    private static GradeMetric parseMetric(String by) {
+        if (by.equals("average")) {
+            return GradeMetric.average();
+        } else if (by.equals("weighted")) {
+            return GradeMetric.weightedAverage();
+        } else if (by.startsWith("subject:")) {
+            return GradeMetric.subject(by.substring("subject:".length()));
+        } else if (by.startsWith("category:")) {
+            return GradeMetric.category(by.substring("category:".length()));
+        }
+        throw new IllegalArgumentException("by must be average, weighted, subject:NAME or category:NAME");
+    }
+    
+    /**
+     * Get a student's score for a metric; the caller holds the gradebook's lock
+     * @param metric What the students were ranked by
+     * @param position The student's position in the gradebook
+     * @return The score
+     */
+    private double scoreOf(GradeMetric metric, int position) {
+        switch (metric.getKind()) {
+            case AVERAGE:
+                return gradebook.getStudentAt(position).getAverage();
+            case WEIGHTED_AVERAGE:
+                return gradebook.getWeightedAverageAt(position);
+            case SUBJECT:
+                return gradebook.metricValue(metric, gradebook.getSubjectTable().lookup(metric.getName()), position);
+            default:
+                return gradebook.metricValue(metric, gradebook.getCategoryTable().lookup(metric.getName()), position);
+        }
+    }
+    
+    /**
+     * Build an error response
+     * @param status The HTTP status
+     * @param message What went wrong
+     * @return The response
+     */
+    private static Response error(int status, String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return new Response(status, json.append('}').toString());
+    }
+    
+    /**
+     * Append ,"name":score with the exporter's four decimals
+     * @param json The output
+     * @param name The field name
+     * @param score The score
+     */
+    private void appendScore(StringBuilder json, String name, double score) {
+        json.append(",\"").append(name).append("\":");
+        numbers.appendFixed(json, score, AVERAGE_DECIMALS);
+    }
+    
+    /**
+     * Append ,"field":{name:average,...} for a student's subjects or categories
+     * @param json The output
+     * @param field The field name
+     * @param slots The student's totals
+     * @param table Names of the slot IDs
+     */
+    private void appendAverages(StringBuilder json, String field, GradeSlots slots, SymbolTable table) {
+        json.append(",\"").append(field).append("\":{");
+        for (int i = 0; i < slots.getSlotCount(); i++) {
+            int symbol = slots.getSymbolAt(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            appendString(json, table.nameOf(symbol));
+            json.append(':');
+            numbers.appendFixed(json, slots.getAverage(symbol), AVERAGE_DECIMALS);
+        }
+        json.append('}');
+    }
+    
+    /**
+     * Append {"A":n,...,"F":n}
+     * @param json The output
+     * @param counts Students per letter, in Student.LETTER_GRADES order
+     */
+    private void appendLetterCounts(StringBuilder json, int[] counts) {
+        json.append('{');
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(Student.LETTER_GRADES[i]).append("\":");
+            numbers.appendInt(json, counts[i]);
+        }
+        json.append('}');
+    }
+    
+    /**
+     * Append a JSON string literal
+     * @param json The output
+     * @param text The text
+     */
+    private static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c == '\n') {
+                json.append("\\n");
+            } else if (c == '\r') {
+                json.append("\\r");
+            } else if (c == '\t') {
+                json.append("\\t");
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    
+    /**
+     * Read a request body, up to MAX_BODY_BYTES
+     * @param body The body stream
+     * @return The body as text
+     * @throws IOException if it cannot be read
+     */
+    private static String readBody(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Request body is too large");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Decode name=value pairs separated by &, as in a query string or form body
+     * @param text The encoded pairs, or null
+     * @param parameters Output map; later pairs replace earlier ones
+     */
+    private static void parseParameters(String text, HashMap<String, String> parameters) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String pair : text.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            if (!name.isEmpty()) {
+                parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
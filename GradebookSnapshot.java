@@ -0,0 +1,341 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Point-in-time copy of a gradebook's students and grades
+ * Capturing copies the names, IDs, the grade store's row columns, the subject
+ * and category names, the category weights and the rank order into arrays
+ * owned by the snapshot, so the copy can be written to disk while grades keep
+ * being added to the live gradebook. The row arrays are reused by later
+ * captures.
+ *
+ * Files are written to a temporary file that is fsynced and then renamed
+ * over the target, so a crash leaves either the old file or the new one.
+ */
+public class GradebookSnapshot {
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    
+    private String[] names;
+    private int[] ids;
+    private int studentCount;
+    
+    private int[] rowStudents;
+    private int[] rowSubjects;
+    private int[] rowCategories;
+    private double[] rowValues;
+    private int rowCount;
+    private long changeCount;
+    private long journalCheckpoint;
+    
+    private String[] subjectNames;
+    private String[] categoryNames;
+    private double[] categoryWeights;
+    private int[] rankedPositions;
+    
+    // Rows grouped by student while writing: rows of student s are order[starts[s]..starts[s + 1])
+    private int[] starts;
+    private int[] order;
+    private boolean grouped;
+    
+    /**
+     * Constructor for an empty GradebookSnapshot
+     */
+    public GradebookSnapshot() {
+        this.names = new String[0];
+        this.ids = new int[0];
+        this.rowStudents = new int[0];
+        this.rowSubjects = new int[0];
+        this.rowCategories = new int[0];
+        this.rowValues = new double[0];
+        this.starts = new int[1];
+        this.order = new int[0];
+    }
+    
+    /**
+     * Copy the current state of a gradebook; the caller must hold the gradebook's lock
+     * @param gradebook The gradebook to copy
+     */
+    void capture(Gradebook gradebook) {
+        studentCount = gradebook.getStudentCount();
+        if (names.length < studentCount) {
+            names = new String[studentCount];
+            ids = new int[studentCount];
+        }
+        for (int position = 0; position < studentCount; position++) {
+            Student student = gradebook.getStudentAt(position);
+            names[position] = student.getName();
+            ids[position] = student.getId();
+        }
+        Arrays.fill(names, studentCount, names.length, null);
+        
+        GradeStore store = gradebook.getGradeStore();
+        store.materializeAll();
+        rowCount = store.getRowCount();
+        if (rowValues.length < rowCount) {
+            int capacity = Math.max(rowCount, rowValues.length + (rowValues.length >> 1));
+            rowStudents = new int[capacity];
+            rowSubjects = new int[capacity];
+            rowCategories = new int[capacity];
+            rowValues = new double[capacity];
+        }
+        store.copyRows(rowStudents, rowSubjects, rowCategories, rowValues);
+        grouped = false;
+        
+        subjectNames = namesOf(gradebook.getSubjectTable());
+        categoryNames = namesOf(gradebook.getCategoryTable());
+        categoryWeights = new double[categoryNames.length];
+        for (int category = 0; category < categoryWeights.length; category++) {
+            categoryWeights[category] = gradebook.getSavedCategoryWeight(category);
+        }
+        rankedPositions = gradebook.getRankedPositions();
+        changeCount = gradebook.getChangeCount();
+        journalCheckpoint = gradebook.getJournalCheckpoint();
+    }
+    
+    private static String[] namesOf(SymbolTable table) {
+        String[] names = new String[table.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = table.nameOf(i);
+        }
+        return names;
+    }
+    
+    /**
+     * Get the gradebook's change count at the time of the capture
+     * @return Number of changes the snapshot includes
+     */
+    public long getChangeCount() {
+        return changeCount;
+    }
+    
+    /**
+     * Get the number of the last journal checkpoint the snapshot holds
+     * @return The checkpoint number, or 0 if there has been none
+     */
+    public long getJournalCheckpoint() {
+        return journalCheckpoint;
+    }
+    
+    /**
+     * Get the number of students in the snapshot
+     * @return Number of students
+     */
+    public int getStudentCount() {
+        return studentCount;
+    }
+    
+    /**
+     * Write the snapshot in the binary format and atomically replace the target
+     * @param target The data file to replace
+     * @throws IOException if the file cannot be written
+     */
+    public void writeBinary(Path target) throws IOException {
+        BinaryGradebookFile.write(this, target);
+    }
+    
+    /**
+     * Write the snapshot in the text format and atomically replace the target
+     * The text format only holds overall grades; subjects and categories need the binary format.
+     * A journal checkpoint is written as a leading "#checkpoint N" line.
+     * @param target The data file to replace
+     * @throws IOException if the file cannot be written
+     */
+    public void writeText(Path target) throws IOException {
+        groupRowsByStudent();
+        
+        Path temp = temporaryFileFor(target);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                    StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            String lineSeparator = System.lineSeparator();
+            
+            if (journalCheckpoint > 0) {
+                writer.write(TextGradebookFile.CHECKPOINT_PREFIX + journalCheckpoint + lineSeparator);
+            }
+            
+            // Format: Name,ID,Grades (comma-separated), matching Gradebook.saveToFile
+            for (int student = 0; student < studentCount; student++) {
+                writer.write(names[student]);
+                writer.write(',');
+                writer.write(Integer.toString(ids[student]));
+                writer.write(',');
+                if (starts[student] == starts[student + 1]) {
+                    writer.write("No grades");
+                }
+                for (int i = starts[student]; i < starts[student + 1]; i++) {
+                    if (i > starts[student]) {
+                        writer.write(',');
+                    }
+                    writer.write(String.format("%.1f", rowValues[order[i]]));
+                }
+                writer.write(lineSeparator);
+            }
+            writer.flush();
+            channel.force(true);
+        }
+        replace(temp, target);
+    }
+    
+    /**
+     * Sort the captured rows by student, keeping the order grades were added
+     */
+    void groupRowsByStudent() {
+        if (grouped) {
+            return;
+        }
+        grouped = true;
+        if (starts.length < studentCount + 1) {
+            starts = new int[studentCount + 1];
+        }
+        if (order.length < rowCount) {
+            order = new int[rowValues.length];
+        }
+        
+        Arrays.fill(starts, 0, studentCount + 1, 0);
+        for (int row = 0; row < rowCount; row++) {
+            starts[rowStudents[row] + 1]++;
+        }
+        for (int student = 0; student < studentCount; student++) {
+            starts[student + 1] += starts[student];
+        }
+        
+        // Place rows using a running cursor per student, then shift the cursors back to the starts
+        for (int row = 0; row < rowCount; row++) {
+            order[starts[rowStudents[row]]++] = row;
+        }
+        for (int student = studentCount; student > 0; student--) {
+            starts[student] = starts[student - 1];
+        }
+        starts[0] = 0;
+    }
+    
+    /**
+     * Get a student's name
+     * @param student The student's position
+     * @return The name
+     */
+    String getName(int student) {
+        return names[student];
+    }
+    
+    /**
+     * Get a student's ID
+     * @param student The student's position
+     * @return The ID
+     */
+    int getId(int student) {
+        return ids[student];
+    }
+    
+    /**
+     * Get the index of a student's first grade in grouped order; call groupRowsByStudent() first
+     * @param student The student's position
+     * @return Index of the first grade
+     */
+    int gradeStart(int student) {
+        return starts[student];
+    }
+    
+    /**
+     * Get the index just past a student's last grade in grouped order
+     * @param student The student's position
+     * @return End index
+     */
+    int gradeEnd(int student) {
+        return starts[student + 1];
+    }
+    
+    /**
+     * Get a grade value by its index in grouped order
+     * @param index The grade index
+     * @return The value
+     */
+    double gradeValue(int index) {
+        return rowValues[order[index]];
+    }
+    
+    /**
+     * Get a grade's subject by its index in grouped order
+     * @param index The grade index
+     * @return Subject ID, or GradeStore.NONE
+     */
+    int gradeSubject(int index) {
+        return rowSubjects[order[index]];
+    }
+    
+    /**
+     * Get a grade's category by its index in grouped order
+     * @param index The grade index
+     * @return Category ID, or GradeStore.NONE
+     */
+    int gradeCategory(int index) {
+        return rowCategories[order[index]];
+    }
+    
+    /**
+     * Get the subject names, indexed by subject ID
+     * @return Subject names
+     */
+    String[] getSubjectNames() {
+        return subjectNames;
+    }
+    
+    /**
+     * Get the category names, indexed by category ID
+     * @return Category names
+     */
+    String[] getCategoryNames() {
+        return categoryNames;
+    }
+    
+    /**
+     * Get the category weights, indexed by category ID
+     * @return Weights, NaN for a category without a weight
+     */
+    double[] getCategoryWeights() {
+        return categoryWeights;
+    }
+    
+    /**
+     * Get the student positions from the highest average down
+     * @return Positions in rank order
+     */
+    int[] getRankedPositions() {
+        return rankedPositions;
+    }
+    
+    /**
+     * Get the temporary file used while replacing a data file
+     * @param target The data file
+     * @return A file next to the target
+     */
+    static Path temporaryFileFor(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+    
+    /**
+     * Rename a fully written file over the target, atomically where supported
+     * @param source The new file
+     * @param target The file to replace
+     * @throws IOException if the file cannot be moved
+     */
+    static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
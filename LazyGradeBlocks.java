@@ -0,0 +1,81 @@
+/**
+ * Saved grade blocks of a version 3 binary file, decoded on demand
+ * Holds the file's bytes and the translation from the file's subject and
+ * category IDs to the IDs of the gradebook it was loaded into.
+ */
+public class LazyGradeBlocks {
+    private GradebookArchive archive;
+    private int[] subjectIds;
+    private int[] categoryIds;
+    
+    /**
+     * Constructor for LazyGradeBlocks
+     * @param archive The saved file, read into memory
+     * @param subjectIds Gradebook subject ID for each subject ID in the file
+     * @param categoryIds Gradebook category ID for each category ID in the file
+     */
+    public LazyGradeBlocks(GradebookArchive archive, int[] subjectIds, int[] categoryIds) {
+        this.archive = archive;
+        this.subjectIds = subjectIds;
+        this.categoryIds = categoryIds;
+    }
+    
+    /**
+     * Append a saved student's rows to the store, in the order they were added
+     * @param store The store to append to
+     * @param student The student's position in the store
+     * @param savedPosition The student's position in the file
+     */
+    void appendRows(GradeStore store, int student, int savedPosition) {
+        int count = archive.getGradeCount(savedPosition);
+        double[] values = new double[count];
+        int[] subjects = new int[count];
+        int[] categories = new int[count];
+        archive.readGradeRows(savedPosition, values, subjects, categories);
+        
+        store.ensureRowCapacity(store.getRowCount() + count);
+        for (int i = 0; i < count; i++) {
+            store.appendSavedRow(student, translate(subjectIds, subjects[i]), translate(categoryIds, categories[i]),
+                    values[i]);
+        }
+    }
+    
+    /**
+     * Add a saved student's grades to the store's histograms
+     * @param store The store whose histograms to update
+     * @param savedPosition The student's position in the file
+     */
+    void countGrades(GradeStore store, int savedPosition) {
+        int count = archive.getGradeCount(savedPosition);
+        double[] values = new double[count];
+        int[] subjects = new int[count];
+        int[] categories = new int[count];
+        archive.readGradeRows(savedPosition, values, subjects, categories);
+        
+        for (int i = 0; i < count; i++) {
+            store.countGrade(translate(subjectIds, subjects[i]), translate(categoryIds, categories[i]), values[i]);
+        }
+    }
+    
+    /**
+     * Read a saved student's per-subject totals
+     * @param savedPosition The student's position in the file
+     * @return Subject slots using the gradebook's subject IDs
+     */
+    GradeSlots readSubjectSlots(int savedPosition) {
+        return archive.readSlots(savedPosition, false, subjectIds);
+    }
+    
+    /**
+     * Read a saved student's per-category totals
+     * @param savedPosition The student's position in the file
+     * @return Category slots using the gradebook's category IDs
+     */
+    GradeSlots readCategorySlots(int savedPosition) {
+        return archive.readSlots(savedPosition, true, categoryIds);
+    }
+    
+    private static int translate(int[] ids, int savedId) {
+        return savedId == GradeStore.NONE ? GradeStore.NONE : ids[savedId];
+    }
+}
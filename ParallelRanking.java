@@ -0,0 +1,290 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs ranking and statistics work for large gradebooks on a fork/join pool
+ * Work is split into contiguous chunks of students. Each chunk writes its own
+ * slice of an output array or its own partial result, and the caller merges
+ * the partials, so no locking is needed. Below the size threshold everything
+ * runs on the calling thread.
+ *
+ * A rank order is built by packing each student's score and position into a
+ * long and sorting the keys with Arrays.parallelSort. A long cannot hold a
+ * full double and a position, so the first sort uses the top 31 bits of the
+ * score; students whose prefixes are equal are then ordered exactly.
+ */
+public class ParallelRanking {
+    /** Number of students from which work is split across the pool */
+    public static final int DEFAULT_THRESHOLD = 100_000;
+    
+    private static final int MIN_CHUNK_SIZE = 16_384;
+    private static final int LINES_PER_CHUNK = 4096;
+    private static final int POSITION_BITS = 31;
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+    private static final int LOW_SCORE_BITS = 33;
+    private static final long LOW_SCORE_MASK = (1L << LOW_SCORE_BITS) - 1;
+    
+    private final ForkJoinPool pool;
+    private final int threshold;
+    
+    /**
+     * Work done on one chunk of students
+     */
+    public interface ChunkTask {
+        /**
+         * Process the students in [from, to)
+         * @param chunk Index of the chunk
+         * @param from First student position
+         * @param to Position just past the last student
+         */
+        void run(int chunk, int from, int to);
+    }
+    
+    /**
+     * Formats one line of a report
+     */
+    public interface LineFormatter {
+        /**
+         * Append the line for an index, without a line separator
+         * @param index The line's index
+         * @param line Output for the line
+         */
+        void format(int index, StringBuilder line);
+    }
+    
+    /**
+     * Constructor for ParallelRanking on the common fork/join pool
+     */
+    public ParallelRanking() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+    
+    /**
+     * Constructor for ParallelRanking
+     * @param pool The pool to run chunks on
+     * @param threshold Number of students from which work is split across the pool
+     */
+    public ParallelRanking(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+    
+    /**
+     * Check whether work over a number of students is split across the pool
+     * @param count Number of students
+     * @return true if the work runs in parallel
+     */
+    public boolean isParallel(int count) {
+        return count >= threshold && pool.getParallelism() > 1;
+    }
+    
+    /**
+     * Get the number of chunks that work over a number of students is split into
+     * @param count Number of students
+     * @return Number of chunks, 1 below the threshold
+     */
+    public int chunkCount(int count) {
+        if (!isParallel(count)) {
+            return 1;
+        }
+        int chunks = pool.getParallelism() * 4;
+        return Math.max(1, Math.min(chunks, count / MIN_CHUNK_SIZE));
+    }
+    
+    /**
+     * Run a task over every chunk and wait for all of them
+     * @param count Number of students
+     * @param task The work for one chunk
+     */
+    public void forEachChunk(int count, ChunkTask task) {
+        forEachChunk(count, chunkCount(count), task);
+    }
+    
+    /**
+     * Run a task over a given number of chunks and wait for all of them
+     * @param count Number of students
+     * @param chunks Number of chunks, usually chunkCount() of a larger total
+     * @param task The work for one chunk
+     */
+    public void forEachChunk(int count, int chunks, ChunkTask task) {
+        if (chunks == 1) {
+            task.run(0, 0, count);
+            return;
+        }
+        pool.invoke(new ChunkAction(task, count, chunks, 0, chunks));
+    }
+    
+    /**
+     * Splits a range of chunks in half until one chunk is left
+     */
+    private static final class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final ChunkTask task;
+        private final int count;
+        private final int chunks;
+        private final int firstChunk;
+        private final int endChunk;
+        
+        ChunkAction(ChunkTask task, int count, int chunks, int firstChunk, int endChunk) {
+            this.task = task;
+            this.count = count;
+            this.chunks = chunks;
+            this.firstChunk = firstChunk;
+            this.endChunk = endChunk;
+        }
+        
+        @Override
+        protected void compute() {
+            if (endChunk - firstChunk == 1) {
+                int from = (int) ((long) count * firstChunk / chunks);
+                int to = (int) ((long) count * endChunk / chunks);
+                task.run(firstChunk, from, to);
+                return;
+            }
+            int middle = (firstChunk + endChunk) >>> 1;
+            invokeAll(new ChunkAction(task, count, chunks, firstChunk, middle),
+                    new ChunkAction(task, count, chunks, middle, endChunk));
+        }
+    }
+    
+    /**
+     * Print one line per index, in order
+     * Large reports are formatted by the pool a block of lines at a time and
+     * each block is written with a single call.
+     * @param count Number of lines
+     * @param formatter Formats each line
+     * @param out The stream to print to
+     */
+    public void printLines(int count, LineFormatter formatter, PrintStream out) {
+        int chunks = chunkCount(count);
+        if (chunks == 1) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                line.setLength(0);
+                formatter.format(i, line);
+                out.println(line);
+            }
+            return;
+        }
+        
+        String lineSeparator = System.lineSeparator();
+        StringBuilder[] blocks = new StringBuilder[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            blocks[chunk] = new StringBuilder();
+        }
+        int roundSize = chunks * LINES_PER_CHUNK;
+        for (int roundStart = 0; roundStart < count; roundStart += roundSize) {
+            int start = roundStart;
+            forEachChunk(Math.min(roundSize, count - start), chunks, (chunk, from, to) -> {
+                StringBuilder block = blocks[chunk];
+                block.setLength(0);
+                for (int i = start + from; i < start + to; i++) {
+                    formatter.format(i, block);
+                    block.append(lineSeparator);
+                }
+            });
+            for (StringBuilder block : blocks) {
+                out.append(block);
+            }
+        }
+        out.flush();
+    }
+    
+    /**
+     * Order students by score, highest first, ties in position order
+     * This is the order RankingIndex keeps.
+     * @param scores Score of each student
+     * @param count Number of students
+     * @return Student positions in rank order
+     */
+    public int[] rankOrder(double[] scores, int count) {
+        // Score prefix and position, so one primitive sort orders both
+        long[] keys = new long[count];
+        forEachChunk(count, (chunk, from, to) -> {
+            for (int position = from; position < to; position++) {
+                keys[position] = (descendingBits(scores[position]) >>> LOW_SCORE_BITS) << POSITION_BITS | position;
+            }
+        });
+        if (isParallel(count)) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+        
+        // Order runs with equal prefixes by the rest of the score
+        int[] order = new int[count];
+        forEachChunk(count, (chunk, from, to) -> {
+            long[] run = new long[16];
+            int end = runStart(keys, to);
+            for (int runFrom = runStart(keys, from); runFrom < end; ) {
+                int runTo = runFrom + 1;
+                while (runTo < count && (keys[runTo] >>> POSITION_BITS) == (keys[runFrom] >>> POSITION_BITS)) {
+                    runTo++;
+                }
+                if (runTo - runFrom == 1) {
+                    order[runFrom] = (int) (keys[runFrom] & POSITION_MASK);
+                } else {
+                    if (run.length < runTo - runFrom) {
+                        run = new long[Math.max(runTo - runFrom, run.length * 2)];
+                    }
+                    sortRun(keys, runFrom, runTo, scores, run, order);
+                }
+                runFrom = runTo;
+            }
+        });
+        return order;
+    }
+    
+    /**
+     * Find the start of the run that contains an index, so chunks never split a run
+     * @param keys The sorted keys
+     * @param index An index from 0 to keys.length
+     * @return The first index of the run, or keys.length
+     */
+    private static int runStart(long[] keys, int index) {
+        if (index >= keys.length) {
+            return keys.length;
+        }
+        while (index > 0 && (keys[index - 1] >>> POSITION_BITS) == (keys[index] >>> POSITION_BITS)) {
+            index--;
+        }
+        return index;
+    }
+    
+    /**
+     * Order a run of keys with equal score prefixes by the full score
+     * @param keys The sorted keys
+     * @param from First index of the run
+     * @param to Index just past the run
+     * @param scores Score of each student
+     * @param run Scratch space for the run's keys
+     * @param order Output positions in rank order
+     */
+    private static void sortRun(long[] keys, int from, int to, double[] scores, long[] run, int[] order) {
+        // Low score bits and position fill all 64 bits; flipping the sign bit sorts them unsigned
+        int length = to - from;
+        for (int i = 0; i < length; i++) {
+            int position = (int) (keys[from + i] & POSITION_MASK);
+            long low = descendingBits(scores[position]) & LOW_SCORE_MASK;
+            run[i] = ((low << POSITION_BITS) | position) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(run, 0, length);
+        for (int i = 0; i < length; i++) {
+            order[from + i] = (int) (run[i] & POSITION_MASK);
+        }
+    }
+    
+    /**
+     * Map a score to 64 bits whose unsigned order is the highest score first
+     * @param score The score
+     * @return Bits that sort the score in descending order
+     */
+    private static long descendingBits(double score) {
+        long bits = Double.doubleToLongBits(score);
+        long ascending = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+        return ~ascending;
+    }
+}
@@ -0,0 +1,352 @@
+import java.util.Arrays;
+
+/**
+ * Ranking of students by a score (highest first), kept as an order-statistic treap
+ * Each student's position in the gradebook is its node, and every node tracks the
+ * size of its subtree, so updating a score, finding the student at a rank and
+ * finding the rank of a student are all O(log n) without re-sorting.
+ * Students with equal scores are ranked in the order they were added.
+ */
+public class RankingIndex {
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    
+    private double[] scores;
+    private int[] left;
+    private int[] right;
+    private int[] sizes;
+    private int[] priorities;
+    private int count;
+    private int root;
+    private int seed;
+    
+    // Results of the last split, to avoid allocating a pair per call
+    private int splitLeft;
+    private int splitRight;
+    
+    /**
+     * Constructor for an empty RankingIndex
+     */
+    public RankingIndex() {
+        this.scores = new double[INITIAL_CAPACITY];
+        this.left = new int[INITIAL_CAPACITY];
+        this.right = new int[INITIAL_CAPACITY];
+        this.sizes = new int[INITIAL_CAPACITY];
+        this.priorities = new int[INITIAL_CAPACITY];
+        this.root = NIL;
+        this.seed = 0x2545F491;
+    }
+    
+    /**
+     * Add the next student to the ranking
+     * @param position The student's position in the gradebook (must equal size())
+     * @param score The student's score
+     */
+    public void add(int position, double score) {
+        if (position != count) {
+            throw new IllegalArgumentException("Expected position " + count + " but got " + position);
+        }
+        if (count == scores.length) {
+            int capacity = count * 2;
+            scores = Arrays.copyOf(scores, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+        }
+        
+        scores[position] = score;
+        priorities[position] = nextPriority();
+        count++;
+        insert(position);
+    }
+    
+    /**
+     * Change a student's score and move it to its new rank
+     * @param position The student's position in the gradebook
+     * @param score The new score
+     */
+    public void update(int position, double score) {
+        if (Double.compare(scores[position], score) == 0) {
+            return;
+        }
+        remove(position);
+        scores[position] = score;
+        insert(position);
+    }
+    
+    /**
+     * Get the score stored for a student
+     * @param position The student's position in the gradebook
+     * @return The student's score
+     */
+    public double getScore(int position) {
+        return scores[position];
+    }
+    
+    /**
+     * Get the 0-based rank of a student (0 is the highest score)
+     * @param position The student's position in the gradebook
+     * @return The student's rank
+     */
+    public int rankOf(int position) {
+        int rank = 0;
+        int node = root;
+        while (node != position) {
+            if (before(position, node)) {
+                node = left[node];
+            } else {
+                rank += sizeOf(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return rank + sizeOf(left[position]);
+    }
+    
+    /**
+     * Get the student at a 0-based rank
+     * @param rank The rank (0 to size() - 1)
+     * @return The student's position in the gradebook
+     */
+    public int positionAt(int rank) {
+        if (rank < 0 || rank >= count) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " out of range for " + count + " students");
+        }
+        
+        int node = root;
+        while (true) {
+            int leftSize = sizeOf(left[node]);
+            if (rank < leftSize) {
+                node = left[node];
+            } else if (rank == leftSize) {
+                return node;
+            } else {
+                rank -= leftSize + 1;
+                node = right[node];
+            }
+        }
+    }
+    
+    /**
+     * Get the students between two 0-based ranks
+     * @param from First rank (inclusive)
+     * @param to Last rank (exclusive)
+     * @return Positions of the students in rank order
+     */
+    public int[] range(int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, count);
+        if (from >= to) {
+            return new int[0];
+        }
+        
+        int[] result = new int[to - from];
+        collect(root, 0, from, to, result);
+        return result;
+    }
+    
+    /**
+     * Get the highest score
+     * @return Highest score, 0 if the ranking is empty
+     */
+    public double getHighestScore() {
+        return count == 0 ? 0.0 : scores[positionAt(0)];
+    }
+    
+    /**
+     * Get the lowest score
+     * @return Lowest score, 0 if the ranking is empty
+     */
+    public double getLowestScore() {
+        return count == 0 ? 0.0 : scores[positionAt(count - 1)];
+    }
+    
+    /**
+     * Get the number of ranked students
+     * @return Number of students
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Remove all students from the ranking
+     */
+    public void clear() {
+        count = 0;
+        root = NIL;
+    }
+    
+    /**
+     * Replace the ranking with students whose order is already known
+     * The treap is built in one linear pass over the order instead of one
+     * insertion per student.
+     * @param scores Score of each student, by position
+     * @param order Positions 0 to count - 1 from the highest score down, ties in position order
+     * @param count Number of students
+     */
+    public void rebuild(double[] scores, int[] order, int count) {
+        if (this.scores.length < count) {
+            int capacity = Math.max(count, INITIAL_CAPACITY);
+            this.scores = new double[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+            sizes = new int[capacity];
+            priorities = new int[capacity];
+        }
+        System.arraycopy(scores, 0, this.scores, 0, count);
+        for (int position = 0; position < count; position++) {
+            priorities[position] = nextPriority();
+        }
+        this.count = count;
+        
+        // Keep the right spine on a stack; a node with a higher priority adopts the nodes it pops as its left subtree
+        int[] spine = new int[count];
+        int top = -1;
+        for (int i = 0; i < count; i++) {
+            int node = order[i];
+            sizes[node] = 1;
+            right[node] = NIL;
+            int last = NIL;
+            while (top >= 0 && priorities[spine[top]] < priorities[node]) {
+                last = spine[top--];
+                updateSize(last);
+            }
+            left[node] = last;
+            if (top >= 0) {
+                right[spine[top]] = node;
+            }
+            spine[++top] = node;
+        }
+        root = top >= 0 ? spine[0] : NIL;
+        while (top >= 0) {
+            updateSize(spine[top--]);
+        }
+    }
+    
+    /**
+     * In-order walk that copies the ranks in [from, to) into result
+     * @param node Subtree root
+     * @param offset Rank of the first node in the subtree
+     * @param from First rank wanted (inclusive)
+     * @param to Last rank wanted (exclusive)
+     * @param result Output array indexed by rank - from
+     */
+    private void collect(int node, int offset, int from, int to, int[] result) {
+        while (node != NIL && offset < to) {
+            int leftSize = sizeOf(left[node]);
+            int nodeRank = offset + leftSize;
+            if (from < nodeRank) {
+                collect(left[node], offset, from, to, result);
+            }
+            if (nodeRank >= from && nodeRank < to) {
+                result[nodeRank - from] = node;
+            }
+            offset = nodeRank + 1;
+            node = right[node];
+        }
+    }
+    
+    /**
+     * Insert a node whose score is already set
+     * @param node The node to insert
+     */
+    private void insert(int node) {
+        left[node] = NIL;
+        right[node] = NIL;
+        sizes[node] = 1;
+        
+        split(root, node, false);
+        int before = splitLeft;
+        int after = splitRight;
+        root = merge(merge(before, node), after);
+    }
+    
+    /**
+     * Remove a node using its current score
+     * @param node The node to remove
+     */
+    private void remove(int node) {
+        split(root, node, false);
+        int before = splitLeft;
+        split(splitRight, node, true);
+        root = merge(before, splitRight);
+    }
+    
+    /**
+     * Split a subtree into nodes ranked before the pivot and the rest
+     * @param node Subtree root
+     * @param pivot The node to split around
+     * @param inclusive true to put the pivot itself on the left side
+     */
+    private void split(int node, int pivot, boolean inclusive) {
+        if (node == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        
+        boolean goesLeft = before(node, pivot) || (inclusive && node == pivot);
+        if (goesLeft) {
+            split(right[node], pivot, inclusive);
+            right[node] = splitLeft;
+            splitLeft = node;
+        } else {
+            split(left[node], pivot, inclusive);
+            left[node] = splitRight;
+            splitRight = node;
+        }
+        updateSize(node);
+    }
+    
+    /**
+     * Merge two subtrees where every node of a ranks before every node of b
+     * @param a Left subtree
+     * @param b Right subtree
+     * @return Root of the merged subtree
+     */
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            updateSize(a);
+            return a;
+        } else {
+            left[b] = merge(a, left[b]);
+            updateSize(b);
+            return b;
+        }
+    }
+    
+    /**
+     * Check whether node a ranks ahead of node b
+     * @param a First node
+     * @param b Second node
+     * @return true if a has the higher score, or the same score and was added first
+     */
+    private boolean before(int a, int b) {
+        int comparison = Double.compare(scores[b], scores[a]);
+        return comparison < 0 || (comparison == 0 && a < b);
+    }
+    
+    private int sizeOf(int node) {
+        return node == NIL ? 0 : sizes[node];
+    }
+    
+    private void updateSize(int node) {
+        sizes[node] = sizeOf(left[node]) + sizeOf(right[node]) + 1;
+    }
+    
+    /**
+     * Next pseudo-random treap priority (xorshift)
+     * @return A random priority
+     */
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Writes the gradebook report file produced by Gradebook.exportReport
+ * Students are rendered a block at a time into reused builders, with
+ * averages taken from the grade store's running sums and numbers written
+ * by FixedPointFormat instead of String.format. On large gradebooks
+ * the blocks of a round are rendered and encoded by the fork/join pool and
+ * then written to the file channel in student order, so the output is the
+ * same as rendering one student after another.
+ */
+public class ReportRenderer {
+    private static final int STUDENTS_PER_BLOCK = 1024;
+    
+    private final ArrayList<Student> students;
+    private final GradeStore gradeStore;
+    private final SymbolTable subjectTable;
+    private final ParallelRanking parallelRanking;
+    private final FixedPointFormat numbers;
+    
+    /**
+     * Constructor for ReportRenderer
+     * @param students Students in report order
+     * @param gradeStore The store holding the students' grades
+     * @param subjectTable Names of the subject IDs
+     * @param parallelRanking The pool and threshold to render with
+     */
+    public ReportRenderer(ArrayList<Student> students, GradeStore gradeStore, SymbolTable subjectTable,
+                          ParallelRanking parallelRanking) {
+        this.students = students;
+        this.gradeStore = gradeStore;
+        this.subjectTable = subjectTable;
+        this.parallelRanking = parallelRanking;
+        this.numbers = new FixedPointFormat();
+    }
+    
+    /**
+     * Write the report
+     * @param path The report file, replaced if it exists
+     * @param classAverage The class average for the header
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path, double classAverage) throws IOException {
+        // Rendering reads every student's rows, so load any still in the data file first
+        gradeStore.materializeAll();
+        Charset charset = Charset.defaultCharset();
+        String lineSeparator = System.lineSeparator();
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder header = new StringBuilder();
+            header.append("=== GRADEBOOK REPORT ===").append(lineSeparator);
+            header.append("Generated on: ").append(java.time.LocalDateTime.now()).append(lineSeparator);
+            header.append(lineSeparator);
+            if (!students.isEmpty()) {
+                header.append("Class Average: ");
+                numbers.appendFixed(header, classAverage, 2);
+                header.append('\n');
+                header.append("Number of Students: ");
+                numbers.appendInt(header, students.size());
+                header.append('\n');
+                header.append(lineSeparator);
+            }
+            writeFully(channel, header.toString().getBytes(charset));
+            
+            int count = students.size();
+            int chunks = parallelRanking.chunkCount(count);
+            BlockRenderer[] renderers = new BlockRenderer[chunks];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                renderers[chunk] = new BlockRenderer(lineSeparator);
+            }
+            byte[][] blocks = new byte[chunks][];
+            int roundSize = chunks * STUDENTS_PER_BLOCK;
+            for (int roundStart = 0; roundStart < count; roundStart += roundSize) {
+                int start = roundStart;
+                parallelRanking.forEachChunk(Math.min(roundSize, count - start), chunks, (chunk, from, to) -> {
+                    blocks[chunk] = renderers[chunk].render(start + from, start + to).getBytes(charset);
+                });
+                for (byte[] block : blocks) {
+                    writeFully(channel, block);
+                }
+            }
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    /**
+     * Renders blocks of students with its own reusable buffers, for one thread at a time
+     */
+    private final class BlockRenderer {
+        private final String lineSeparator;
+        private final StringBuilder text;
+        private int[] subjects;
+        private double[] values;
+        
+        BlockRenderer(String lineSeparator) {
+            this.lineSeparator = lineSeparator;
+            this.text = new StringBuilder(STUDENTS_PER_BLOCK * 128);
+            this.subjects = new int[16];
+            this.values = new double[16];
+        }
+        
+        /**
+         * Render the students in [from, to)
+         * @param from First student position
+         * @param to Position just past the last student
+         * @return The rendered text
+         */
+        String render(int from, int to) {
+            text.setLength(0);
+            for (int position = from; position < to; position++) {
+                numbers.appendInt(text, position + 1);
+                text.append(". ");
+                appendStudent(students.get(position));
+                text.append(lineSeparator).append("---").append(lineSeparator);
+            }
+            return text.toString();
+        }
+        
+        /**
+         * Append the same text as Student.toDetailedString()
+         * @param student The student
+         */
+        private void appendStudent(Student student) {
+            int storePosition = student.getStorePosition();
+            int gradeCount = gradeStore.getGradeCount(storePosition);
+            double average = gradeStore.getAverage(storePosition);
+            if (values.length < gradeCount) {
+                subjects = new int[Math.max(gradeCount, values.length * 2)];
+                values = new double[subjects.length];
+            }
+            int rows = gradeStore.copyStudentRows(storePosition, subjects, null, values);
+            
+            text.append("Student: ").append(student.getName()).append(" (ID: ");
+            numbers.appendInt(text, student.getId());
+            text.append(")\n");
+            text.append("Overall Average: ");
+            numbers.appendFixed(text, average, 2);
+            text.append(" (").append(Student.letterGradeFor(average)).append(")\n");
+            text.append("Overall Grades: [");
+            if (gradeCount == 0) {
+                text.append("No grades");
+            } else {
+                appendGrades(GradeStore.NONE, rows);
+            }
+            text.append("]\n");
+            
+            GradeSlots slots = student.getSubjectSlots();
+            if (slots.getSlotCount() > 0) {
+                text.append("Subject Breakdown:\n");
+                for (int i = 0; i < slots.getSlotCount(); i++) {
+                    int subjectId = slots.getSymbolAt(i);
+                    double subjectAverage = slots.getAverage(subjectId);
+                    text.append("  ").append(subjectTable.nameOf(subjectId)).append(": ");
+                    numbers.appendFixed(text, subjectAverage, 2);
+                    text.append(" (").append(Student.letterGradeFor(subjectAverage)).append(") - [");
+                    appendGrades(subjectId, rows);
+                    text.append("]\n");
+                }
+            }
+        }
+        
+        /**
+         * Append the copied grades as a comma-separated list
+         * @param subject The subject to list, or GradeStore.NONE to list every grade
+         * @param rows Number of copied rows
+         */
+        private void appendGrades(int subject, int rows) {
+            boolean first = true;
+            for (int i = 0; i < rows; i++) {
+                if (subject == GradeStore.NONE || subjects[i] == subject) {
+                    if (!first) {
+                        text.append(", ");
+                    }
+                    numbers.appendFixed(text, values[i], 1);
+                    first = false;
+                }
+            }
+        }
+    }
+}
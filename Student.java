@@ -1,16 +1,27 @@
 import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * Student class representing a student with grades
  * Supports multiple subjects and grade management
  */
 public class Student {
+    /** Letter grades from highest to lowest, indexed by letterIndexFor() */
+    public static final String[] LETTER_GRADES = {"A", "B", "C", "D", "F"};
+    
     private String name;
     private int id;
-    private ArrayList<Double> grades;
-    private ArrayList<String> subjects;
-    private ArrayList<ArrayList<Double>> subjectGrades;
+    
+    // Grades live in a columnar store; this student owns one position in it
+    private GradeStore gradeStore;
+    private int storePosition;
+    
+    // Per-subject counts and sums, indexed by the gradebook's subject IDs;
+    // read from the data file on first use for a student loaded from one
+    private SymbolTable subjectTable;
+    private GradeSlots subjectGrades;
+    
+    // Gradebook notified when this student's average changes, if any
+    private Gradebook owner;
     
     /**
      * Constructor for Student with name and ID
@@ -18,11 +29,34 @@ public class Student {
      * @param id Student's unique ID
      */
     public Student(String name, int id) {
+        this(name, id, new SymbolTable(), new GradeStore(1, 8));
+    }
+    
+    /**
+     * Constructor for Student backed by a gradebook's shared tables
+     * @param name Student's name
+     * @param id Student's unique ID
+     * @param subjectTable Symbol table that assigns subject IDs
+     * @param gradeStore Columnar store that holds the student's grades
+     */
+    public Student(String name, int id, SymbolTable subjectTable, GradeStore gradeStore) {
         this.name = name;
         this.id = id;
-        this.grades = new ArrayList<>();
-        this.subjects = new ArrayList<>();
-        this.subjectGrades = new ArrayList<>();
+        this.gradeStore = gradeStore;
+        this.storePosition = gradeStore.addStudent();
+        this.subjectTable = subjectTable;
+    }
+    
+    /**
+     * Get the per-subject totals, loading them on first use
+     * @return The subject slots
+     */
+    private GradeSlots subjectSlots() {
+        if (subjectGrades == null) {
+            subjectGrades = gradeStore.isSaved(storePosition)
+                    ? gradeStore.loadSubjectSlots(storePosition) : new GradeSlots();
+        }
+        return subjectGrades;
     }
     
     /**
@@ -30,13 +64,110 @@ public class Student {
      * @param grade The grade to add (0-100)
      */
     public void addGrade(double grade) {
+        appendGrade(GradeStore.NONE, GradeStore.NONE, grade);
+    }
+    
+    /**
+     * Add several overall grades at once, notifying the gradebook a single time
+     * @param values The grades to add (0-100); invalid values are skipped
+     * @param count Number of values to read from the array
+     * @return Number of grades added
+     */
+    int addGrades(double[] values, int count) {
+        return addGrades(values, 0, count);
+    }
+    
+    /**
+     * Add several overall grades from part of an array, notifying the gradebook a single time
+     * @param values The grades to add (0-100); invalid values are skipped
+     * @param offset Index of the first value to read
+     * @param count Number of values to read from the array
+     * @return Number of grades added
+     */
+    int addGrades(double[] values, int offset, int count) {
+        double oldAverage = getAverage();
+        int added = 0;
+        for (int i = offset; i < offset + count; i++) {
+            double grade = values[i];
+            if (grade >= 0 && grade <= 100) {
+                gradeStore.append(storePosition, GradeStore.NONE, GradeStore.NONE, grade);
+                added++;
+            } else {
+                listener().invalidGrade(grade);
+            }
+        }
+        
+        if (owner != null && added > 0) {
+            owner.onGradesAdded(this, oldAverage, added);
+        }
+        return added;
+    }
+    
+    /**
+     * Add validated grade rows at once, notifying the gradebook a single time
+     * @param subjects Subject ID of each row, or GradeStore.NONE
+     * @param categories Category ID of each row, or GradeStore.NONE
+     * @param values The grades to add (0-100)
+     * @param count Number of rows to read from the arrays
+     */
+    void addGradeRows(int[] subjects, int[] categories, double[] values, int count) {
+        double oldAverage = getAverage();
+        for (int i = 0; i < count; i++) {
+            if (subjects[i] != GradeStore.NONE) {
+                subjectSlots().add(subjects[i], values[i]);
+            }
+            gradeStore.append(storePosition, subjects[i], categories[i], values[i]);
+        }
+        
+        if (owner != null && count > 0) {
+            owner.onGradesAdded(this, oldAverage, count);
+        }
+    }
+    
+    /**
+     * Add a grade tagged with a weighted category
+     * @param category The category ID assigned by the gradebook
+     * @param grade The grade to add (0-100)
+     */
+    void addGradeForCategory(int category, double grade) {
+        appendGrade(GradeStore.NONE, category, grade);
+    }
+    
+    /**
+     * Validate a grade and append it to the store
+     * @param subject Subject ID, or GradeStore.NONE
+     * @param category Category ID, or GradeStore.NONE
+     * @param grade The grade to add (0-100)
+     */
+    private void appendGrade(int subject, int category, double grade) {
         if (grade >= 0 && grade <= 100) {
-            grades.add(grade);
+            double oldAverage = getAverage();
+            gradeStore.append(storePosition, subject, category, grade);
+            
+            if (owner != null) {
+                owner.onGradesAdded(this, oldAverage, 1);
+            }
         } else {
-            System.out.println("Invalid grade. Please enter a grade between 0 and 100.");
+            listener().invalidGrade(grade);
         }
     }
     
+    /**
+     * Get the listener that is told about rejected grades
+     * @return The owning gradebook's listener, or GradebookListener.NONE for a standalone student
+     */
+    private GradebookListener listener() {
+        return owner != null ? owner.getListener() : GradebookListener.NONE;
+    }
+    
+    /**
+     * Attach this student to the gradebook that maintains its statistics
+     * @param owner The gradebook to notify when grades are added
+     */
+    void attachTo(Gradebook owner) {
+        this.owner = owner;
+    }
+    
     /**
      * Add a grade for a specific subject
      * @param subject The subject name
@@ -44,24 +175,15 @@ public class Student {
      */
     public void addGradeForSubject(String subject, double grade) {
         if (grade < 0 || grade > 100) {
-            System.out.println("Invalid grade. Please enter a grade between 0 and 100.");
+            listener().invalidGrade(grade);
             return;
         }
         
-        int subjectIndex = subjects.indexOf(subject);
-        if (subjectIndex == -1) {
-            // New subject
-            subjects.add(subject);
-            ArrayList<Double> newSubjectGrades = new ArrayList<>();
-            newSubjectGrades.add(grade);
-            subjectGrades.add(newSubjectGrades);
-        } else {
-            // Existing subject
-            subjectGrades.get(subjectIndex).add(grade);
-        }
+        int subjectId = subjectTable.intern(subject);
+        subjectSlots().add(subjectId, grade);
         
-        // Also add to overall grades
-        addGrade(grade);
+        // Also counts towards the overall grades
+        appendGrade(subjectId, GradeStore.NONE, grade);
     }
     
     /**
@@ -69,15 +191,7 @@ public class Student {
      * @return The average grade
      */
     public double getAverage() {
-        if (grades.isEmpty()) {
-            return 0.0;
-        }
-        
-        double sum = 0.0;
-        for (double grade : grades) {
-            sum += grade;
-        }
-        return sum / grades.size();
+        return gradeStore.getAverage(storePosition);
     }
     
     /**
@@ -86,21 +200,7 @@ public class Student {
      * @return The average grade for the subject
      */
     public double getAverageForSubject(String subject) {
-        int subjectIndex = subjects.indexOf(subject);
-        if (subjectIndex == -1) {
-            return 0.0;
-        }
-        
-        ArrayList<Double> subjectGradeList = subjectGrades.get(subjectIndex);
-        if (subjectGradeList.isEmpty()) {
-            return 0.0;
-        }
-        
-        double sum = 0.0;
-        for (double grade : subjectGradeList) {
-            sum += grade;
-        }
-        return sum / subjectGradeList.size();
+        return subjectSlots().getAverage(subjectTable.lookup(subject));
     }
     
     /**
@@ -108,12 +208,7 @@ public class Student {
      * @return Letter grade (A, B, C, D, F)
      */
     public String getLetterGrade() {
-        double average = getAverage();
-        if (average >= 90) return "A";
-        else if (average >= 80) return "B";
-        else if (average >= 70) return "C";
-        else if (average >= 60) return "D";
-        else return "F";
+        return letterGradeFor(getAverage());
     }
     
     /**
@@ -122,12 +217,29 @@ public class Student {
      * @return Letter grade for the subject
      */
     public String getLetterGradeForSubject(String subject) {
-        double average = getAverageForSubject(subject);
-        if (average >= 90) return "A";
-        else if (average >= 80) return "B";
-        else if (average >= 70) return "C";
-        else if (average >= 60) return "D";
-        else return "F";
+        return letterGradeFor(getAverageForSubject(subject));
+    }
+    
+    /**
+     * Convert an average to a letter grade
+     * @param average The average grade
+     * @return Letter grade (A, B, C, D, F)
+     */
+    public static String letterGradeFor(double average) {
+        return LETTER_GRADES[letterIndexFor(average)];
+    }
+    
+    /**
+     * Convert an average to the index of its letter grade
+     * @param average The average grade
+     * @return Index into LETTER_GRADES (0 for A to 4 for F)
+     */
+    public static int letterIndexFor(double average) {
+        if (average >= 90) return 0;
+        else if (average >= 80) return 1;
+        else if (average >= 70) return 2;
+        else if (average >= 60) return 3;
+        else return 4;
     }
     
     /**
@@ -135,18 +247,11 @@ public class Student {
      * @return String representation of all grades
      */
     public String getGradesString() {
-        if (grades.isEmpty()) {
+        if (getGradeCount() == 0) {
             return "No grades";
         }
-        
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < grades.size(); i++) {
-            sb.append(String.format("%.1f", grades.get(i)));
-            if (i < grades.size() - 1) {
-                sb.append(", ");
-            }
-        }
-        return sb.toString();
+        double[] values = gradeStore.getGrades(storePosition);
+        return formatGrades(values, values.length);
     }
     
     /**
@@ -155,20 +260,35 @@ public class Student {
      * @return String representation of grades for the subject
      */
     public String getGradesStringForSubject(String subject) {
-        int subjectIndex = subjects.indexOf(subject);
-        if (subjectIndex == -1) {
+        int subjectId = subjectTable.lookup(subject);
+        if (!subjectSlots().contains(subjectId)) {
             return "No grades for this subject";
         }
         
-        ArrayList<Double> subjectGradeList = subjectGrades.get(subjectIndex);
-        if (subjectGradeList.isEmpty()) {
-            return "No grades";
-        }
-        
+        double[] values = getSubjectGrades(subjectId);
+        return formatGrades(values, values.length);
+    }
+    
+    /**
+     * Get the grades for a subject from the store
+     * @param subjectId The subject ID
+     * @return Grades for the subject in the order they were added
+     */
+    private double[] getSubjectGrades(int subjectId) {
+        return gradeStore.getSubjectGrades(storePosition, subjectId, subjectSlots().getCount(subjectId));
+    }
+    
+    /**
+     * Format the first count values as a comma-separated list
+     * @param values The grade values
+     * @param count Number of values to format
+     * @return Comma-separated grades with one decimal place
+     */
+    private static String formatGrades(double[] values, int count) {
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < subjectGradeList.size(); i++) {
-            sb.append(String.format("%.1f", subjectGradeList.get(i)));
-            if (i < grades.size() - 1) {
+        for (int i = 0; i < count; i++) {
+            sb.append(String.format("%.1f", values[i]));
+            if (i < count - 1) {
                 sb.append(", ");
             }
         }
@@ -180,7 +300,12 @@ public class Student {
      * @return List of subject names
      */
     public ArrayList<String> getSubjects() {
-        return new ArrayList<>(subjects);
+        GradeSlots slots = subjectSlots();
+        ArrayList<String> subjects = new ArrayList<>(slots.getSlotCount());
+        for (int i = 0; i < slots.getSlotCount(); i++) {
+            subjects.add(subjectTable.nameOf(slots.getSymbolAt(i)));
+        }
+        return subjects;
     }
     
     /**
@@ -188,7 +313,7 @@ public class Student {
      * @return Number of grades
      */
     public int getGradeCount() {
-        return grades.size();
+        return gradeStore.getGradeCount(storePosition);
     }
     
     /**
@@ -197,11 +322,7 @@ public class Student {
      * @return Number of grades for the subject
      */
     public int getGradeCountForSubject(String subject) {
-        int subjectIndex = subjects.indexOf(subject);
-        if (subjectIndex == -1) {
-            return 0;
-        }
-        return subjectGrades.get(subjectIndex).size();
+        return subjectSlots().getCount(subjectTable.lookup(subject));
     }
     
     // Getters
@@ -214,7 +335,44 @@ public class Student {
     }
     
     public ArrayList<Double> getGrades() {
-        return new ArrayList<>(grades);
+        double[] values = gradeStore.getGrades(storePosition);
+        ArrayList<Double> copy = new ArrayList<>(values.length);
+        for (double value : values) {
+            copy.add(value);
+        }
+        return copy;
+    }
+    
+    /**
+     * Get all grades as a primitive array
+     * @return Copy of the grades without boxing
+     */
+    public double[] getGradesArray() {
+        return gradeStore.getGrades(storePosition);
+    }
+    
+    /**
+     * Get the sum of all grades
+     * @return Running sum of the grades
+     */
+    public double getGradeSum() {
+        return gradeStore.getGradeSum(storePosition);
+    }
+    
+    /**
+     * Get this student's position in its grade store
+     * @return The store position
+     */
+    int getStorePosition() {
+        return storePosition;
+    }
+    
+    /**
+     * Get this student's per-subject totals, loading them on first use
+     * @return The subject slots
+     */
+    GradeSlots getSubjectSlots() {
+        return subjectSlots();
     }
     
     /**
@@ -237,14 +395,18 @@ public class Student {
         sb.append(String.format("Overall Average: %.2f (%s)\n", getAverage(), getLetterGrade()));
         sb.append(String.format("Overall Grades: [%s]\n", getGradesString()));
         
-        if (!subjects.isEmpty()) {
+        GradeSlots slots = subjectSlots();
+        if (slots.getSlotCount() > 0) {
             sb.append("Subject Breakdown:\n");
-            for (String subject : subjects) {
+            for (int i = 0; i < slots.getSlotCount(); i++) {
+                int subjectId = slots.getSymbolAt(i);
+                double subjectAverage = slots.getAverage(subjectId);
+                double[] values = getSubjectGrades(subjectId);
                 sb.append(String.format("  %s: %.2f (%s) - [%s]\n", 
-                    subject, 
-                    getAverageForSubject(subject), 
-                    getLetterGradeForSubject(subject),
-                    getGradesStringForSubject(subject)));
+                    subjectTable.nameOf(subjectId), 
+                    subjectAverage, 
+                    letterGradeFor(subjectAverage),
+                    formatGrades(values, values.length)));
             }
         }
         
@@ -0,0 +1,157 @@
+import java.util.Arrays;
+
+/**
+ * Hash index from student ID to the student's position in the gradebook
+ * Uses open addressing with linear probing over primitive arrays, so lookups
+ * and inserts are O(1) without boxing the keys
+ */
+public class StudentIndex {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+    
+    private int[] keys;
+    private int[] positions;
+    private int size;
+    private int mask;
+    
+    /**
+     * Constructor for an empty StudentIndex
+     */
+    public StudentIndex() {
+        this(MIN_CAPACITY);
+    }
+    
+    /**
+     * Constructor for a StudentIndex sized for an expected number of students
+     * @param expectedSize Number of students expected to be indexed
+     */
+    public StudentIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+    
+    /**
+     * Find the position stored for a student ID
+     * @param id The student's ID
+     * @return The position, or -1 if the ID is not indexed
+     */
+    public int get(int id) {
+        int slot = mix(id) & mask;
+        while (positions[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                return positions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+    
+    /**
+     * Check whether a student ID is indexed
+     * @param id The student's ID
+     * @return true if the ID is present
+     */
+    public boolean contains(int id) {
+        return get(id) != EMPTY;
+    }
+    
+    /**
+     * Index a student ID if it is not already present
+     * @param id The student's ID
+     * @param position The student's position (must be non-negative)
+     * @return true if the ID was added, false if it was already indexed
+     */
+    public boolean putIfAbsent(int id, int position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Position must be non-negative: " + position);
+        }
+        
+        int slot = mix(id) & mask;
+        while (positions[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        
+        keys[slot] = id;
+        positions[slot] = position;
+        size++;
+        
+        // Keep the load factor at or below one half so probe runs stay short
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+    
+    /**
+     * Remove all entries from the index
+     */
+    public void clear() {
+        Arrays.fill(positions, EMPTY);
+        size = 0;
+    }
+    
+    /**
+     * Get the number of indexed students
+     * @return Number of entries
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Grow the table and reinsert every entry
+     * @param capacity The new table size (a power of two)
+     */
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldPositions = positions;
+        allocate(capacity);
+        
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldPositions[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (positions[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                positions[slot] = oldPositions[i];
+            }
+        }
+    }
+    
+    /**
+     * Allocate empty tables of the given size
+     * @param capacity The table size (a power of two)
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, EMPTY);
+        mask = capacity - 1;
+    }
+    
+    /**
+     * Smallest power of two table that holds the expected size at half load
+     * @param expectedSize Number of entries expected
+     * @return The table size
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+    
+    /**
+     * Scramble the bits of an ID so sequential IDs spread across the table
+     * @param id The student's ID
+     * @return The mixed hash
+     */
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
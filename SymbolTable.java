@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Symbol table that interns names (subjects, categories) as dense int IDs
+ * Shared across a gradebook so per-student data can be stored in arrays
+ * indexed by ID instead of searching lists of names
+ */
+public class SymbolTable {
+    private HashMap<String, Integer> ids;
+    private ArrayList<String> names;
+    
+    /**
+     * Constructor for an empty SymbolTable
+     */
+    public SymbolTable() {
+        this.ids = new HashMap<>();
+        this.names = new ArrayList<>();
+    }
+    
+    /**
+     * Get the ID for a name, assigning the next free ID if it is new
+     * @param name The name to intern
+     * @return The dense ID for the name
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+    
+    /**
+     * Get the ID for a name without adding it
+     * @param name The name to look up
+     * @return The ID, or -1 if the name has not been interned
+     */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+    
+    /**
+     * Get the name for an ID
+     * @param id The symbol ID
+     * @return The interned name
+     */
+    public String nameOf(int id) {
+        return names.get(id);
+    }
+    
+    /**
+     * Get the number of interned names
+     * @return Number of symbols
+     */
+    public int size() {
+        return names.size();
+    }
+}
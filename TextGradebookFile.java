@@ -0,0 +1,337 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for the text gradebook format: name,id,grade,grade,...
+ * Parses straight from a reusable byte buffer: IDs and grades are decoded
+ * from the bytes without creating a String per field, and only the name of
+ * each student is turned into a String. Malformed lines and fields are
+ * reported with their line numbers instead of being skipped silently.
+ * A "#checkpoint N" line records the last journal checkpoint the file holds.
+ */
+public class TextGradebookFile {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final byte[] NO_GRADES = "No grades".getBytes(StandardCharsets.US_ASCII);
+    
+    /** Start of the line that holds the journal checkpoint */
+    public static final String CHECKPOINT_PREFIX = "#checkpoint ";
+    private static final byte[] CHECKPOINT = CHECKPOINT_PREFIX.getBytes(StandardCharsets.US_ASCII);
+    
+    // Exact powers of ten for the fast decimal path
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    private byte[] buffer;
+    private double[] grades;
+    private int lineNumber;
+    private int problems;
+    private String source;
+    private GradebookListener listener;
+    
+    // Parse cursor within the current line, and the value of the last number parsed
+    private int cursor;
+    private long parsedInt;
+    private double parsedDouble;
+    
+    /**
+     * Constructor for a TextGradebookFile reader
+     */
+    public TextGradebookFile() {
+        this.buffer = new byte[BUFFER_SIZE];
+        this.grades = new double[64];
+    }
+    
+    /**
+     * Read a text gradebook file into an empty gradebook
+     * @param path The file to read
+     * @param gradebook The gradebook to fill
+     * @return Number of students loaded
+     * @throws IOException if the file cannot be read
+     */
+    public int read(Path path, Gradebook gradebook) throws IOException {
+        source = path.toString();
+        listener = gradebook.getListener();
+        lineNumber = 0;
+        problems = 0;
+        int loaded = 0;
+        
+        try (InputStream in = Files.newInputStream(path)) {
+            int start = 0;
+            int end = 0;
+            boolean eof = false;
+            
+            while (true) {
+                // Find the end of the current line in the buffered bytes
+                int newline = indexOf(buffer, (byte) '\n', start, end);
+                if (newline < 0 && !eof) {
+                    // Move the partial line to the front (growing for very long lines) and refill
+                    int pending = end - start;
+                    if (pending == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    } else if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, pending);
+                    }
+                    start = 0;
+                    end = pending;
+                    int read = in.read(buffer, end, buffer.length - end);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        end += read;
+                    }
+                    continue;
+                }
+                
+                int lineEnd = newline < 0 ? end : newline;
+                if (start < lineEnd || newline >= 0) {
+                    lineNumber++;
+                    if (parseLine(gradebook, start, lineEnd)) {
+                        loaded++;
+                    }
+                }
+                if (newline < 0) {
+                    break;
+                }
+                start = newline + 1;
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Get the number of malformed lines or fields found by the last read
+     * @return Number of problems reported
+     */
+    public int getProblemCount() {
+        return problems;
+    }
+    
+    /**
+     * Parse one line and add its student and grades to the gradebook
+     * @param gradebook The gradebook to fill
+     * @param from First byte of the line
+     * @param to End of the line (exclusive, newline not included)
+     * @return true if a student was added
+     */
+    private boolean parseLine(Gradebook gradebook, int from, int to) {
+        // Trim surrounding whitespace (including a trailing carriage return)
+        while (from < to && buffer[from] <= ' ') from++;
+        while (to > from && buffer[to - 1] <= ' ') to--;
+        if (from == to) {
+            return false;
+        }
+        if (parseCheckpoint(gradebook, from, to)) {
+            return false;
+        }
+        
+        int nameEnd = indexOf(buffer, (byte) ',', from, to);
+        if (nameEnd < 0) {
+            report("missing student ID");
+            return false;
+        }
+        String name = new String(buffer, from, nameEnd - from, StandardCharsets.UTF_8);
+        
+        cursor = nameEnd + 1;
+        int fieldEnd = fieldEnd(to);
+        if (!parseInt(cursor, fieldEnd)) {
+            report("invalid student ID '" + text(cursor, fieldEnd) + "'");
+            return false;
+        }
+        int id = (int) parsedInt;
+        
+        int gradeCount = 0;
+        while (fieldEnd < to) {
+            cursor = fieldEnd + 1;
+            fieldEnd = fieldEnd(to);
+            int fieldStart = skipSpaces(cursor, fieldEnd);
+            int fieldStop = trimSpaces(fieldStart, fieldEnd);
+            if (fieldStart == fieldStop || matches(NO_GRADES, fieldStart, fieldStop)) {
+                continue;
+            }
+            if (!parseDouble(fieldStart, fieldStop)) {
+                report("invalid grade '" + text(fieldStart, fieldStop) + "'");
+                continue;
+            }
+            if (gradeCount == grades.length) {
+                grades = Arrays.copyOf(grades, gradeCount * 2);
+            }
+            grades[gradeCount++] = parsedDouble;
+        }
+        
+        Student student = gradebook.loadStudent(name, id);
+        if (student == null) {
+            report("duplicate student ID " + id);
+            return false;
+        }
+        student.addGrades(grades, gradeCount);
+        return true;
+    }
+    
+    /**
+     * Parse a decimal int field, allowing surrounding spaces
+     * @param from First byte of the field
+     * @param to End of the field (exclusive)
+     * @return true if the field held a valid int, stored in parsedInt
+     */
+    private boolean parseInt(int from, int to) {
+        from = skipSpaces(from, to);
+        to = trimSpaces(from, to);
+        boolean negative = from < to && buffer[from] == '-';
+        if (negative || (from < to && buffer[from] == '+')) {
+            from++;
+        }
+        if (from == to || to - from > 10) {
+            return false;
+        }
+        
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return false;
+        }
+        parsedInt = value;
+        return true;
+    }
+    
+    /**
+     * Parse a decimal number field
+     * Plain decimals with up to 15 digits are decoded directly from the bytes;
+     * their value is exact because both the digits and the power of ten are
+     * exactly representable. Anything else falls back to Double.parseDouble.
+     * @param from First byte of the field (already trimmed)
+     * @param to End of the field (exclusive, already trimmed)
+     * @return true if the field held a valid number, stored in parsedDouble
+     */
+    private boolean parseDouble(int from, int to) {
+        int i = from;
+        boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+') {
+            i++;
+        }
+        
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean fast = i < to;
+        for (; i < to && fast; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                fast = false;
+            }
+        }
+        
+        if (fast && digits > 0 && digits <= MAX_FAST_DIGITS) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            parsedDouble = negative ? -value : value;
+            return true;
+        }
+        
+        try {
+            parsedDouble = Double.parseDouble(text(from, to));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Find the end of the field starting at the cursor
+     * @param to End of the line
+     * @return Position of the next comma, or the end of the line
+     */
+    private int fieldEnd(int to) {
+        int comma = indexOf(buffer, (byte) ',', cursor, to);
+        return comma < 0 ? to : comma;
+    }
+    
+    /**
+     * Read a "#checkpoint N" line into the gradebook
+     * @param gradebook The gradebook being filled
+     * @param from First byte of the trimmed line
+     * @param to End of the trimmed line
+     * @return true if the line was a checkpoint line
+     */
+    private boolean parseCheckpoint(Gradebook gradebook, int from, int to) {
+        int digits = from + CHECKPOINT.length;
+        if (to <= digits || to - digits > 18 || !matches(CHECKPOINT, from, digits)) {
+            return false;
+        }
+        long checkpoint = 0;
+        for (int i = digits; i < to; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            checkpoint = checkpoint * 10 + digit;
+        }
+        gradebook.setJournalCheckpoint(checkpoint);
+        return true;
+    }
+    
+    private int skipSpaces(int from, int to) {
+        while (from < to && buffer[from] <= ' ') from++;
+        return from;
+    }
+    
+    private int trimSpaces(int from, int to) {
+        while (to > from && buffer[to - 1] <= ' ') to--;
+        return to;
+    }
+    
+    private boolean matches(byte[] expected, int from, int to) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private String text(int from, int to) {
+        return new String(buffer, from, to - from, StandardCharsets.UTF_8);
+    }
+    
+    private static int indexOf(byte[] bytes, byte target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Report a problem with the current line
+     * @param message Description of the problem
+     */
+    private void report(String message) {
+        problems++;
+        listener.warning(source + " line " + lineNumber + ": " + message + " (skipped)");
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Keeps the k best-scoring students seen so far in a bounded heap
+ * The heap's root is the worst of the kept students, so each new student is
+ * compared with it and either dropped or swapped in at O(log k) cost. A pass
+ * over n students takes O(n log k) time and O(k) memory. Selectors filled
+ * from different chunks of students can be merged.
+ *
+ * The order matches RankingIndex: highest score first with ties in position
+ * order, and for the lowest scores the exact reverse of that.
+ */
+public class TopKSelector {
+    private final int k;
+    private final boolean highest;
+    private final double[] scores;
+    private final int[] positions;
+    private int size;
+    
+    /**
+     * Constructor for TopKSelector
+     * @param k Number of students to keep
+     * @param highest true to keep the highest scores, false for the lowest
+     */
+    public TopKSelector(int k, boolean highest) {
+        this.k = Math.max(0, k);
+        this.highest = highest;
+        this.scores = new double[this.k];
+        this.positions = new int[this.k];
+    }
+    
+    /**
+     * Offer a student, keeping it if it is among the best k so far
+     * @param position The student's position in the gradebook
+     * @param score The student's score
+     */
+    public void offer(int position, double score) {
+        if (size < k) {
+            scores[size] = score;
+            positions[size] = position;
+            siftUp(size++);
+        } else if (k > 0 && better(score, position, scores[0], positions[0])) {
+            scores[0] = score;
+            positions[0] = position;
+            siftDown(0);
+        }
+    }
+    
+    /**
+     * Offer every student kept by another selector
+     * @param other A selector over other students
+     */
+    public void merge(TopKSelector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.positions[i], other.scores[i]);
+        }
+    }
+    
+    /**
+     * Get the kept students, best first
+     * @return Student positions
+     */
+    public int[] toSortedPositions() {
+        // Heap-sort a copy: the root is the worst, so fill the result from the back
+        TopKSelector copy = new TopKSelector(size, highest);
+        copy.merge(this);
+        int[] result = new int[copy.size];
+        for (int i = copy.size - 1; i >= 0; i--) {
+            result[i] = copy.positions[0];
+            copy.size--;
+            copy.swap(0, copy.size);
+            copy.siftDown(0);
+        }
+        return result;
+    }
+    
+    /**
+     * Get the number of kept students
+     * @return Number of students, at most k
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Check whether one student ranks ahead of another
+     * @return true if (scoreA, positionA) is better than (scoreB, positionB)
+     */
+    private boolean better(double scoreA, int positionA, double scoreB, int positionB) {
+        int comparison = Double.compare(scoreA, scoreB);
+        if (comparison == 0) {
+            return highest ? positionA < positionB : positionA > positionB;
+        }
+        return highest ? comparison > 0 : comparison < 0;
+    }
+    
+    /**
+     * Move an entry up while it is worse than its parent
+     * @param index The entry
+     */
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(scores[parent], positions[parent], scores[index], positions[index])) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+    
+    /**
+     * Move an entry down while a child is worse than it
+     * @param index The entry
+     */
+    private void siftDown(int index) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && better(scores[worst], positions[worst], scores[left], positions[left])) {
+                worst = left;
+            }
+            if (right < size && better(scores[worst], positions[worst], scores[right], positions[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+    
+    private void swap(int a, int b) {
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int position = positions[a];
+        positions[a] = positions[b];
+        positions[b] = position;
+    }
+}
@@ -1,36 +1,103 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Enhanced Gradebook with weighted categories support
  * Allows different weightings for different types of assignments
  */
 public class WeightedGradebook extends Gradebook {
-    private Map<String, Double> categoryWeights;
-    private Map<Integer, Map<String, ArrayList<Double>>> studentCategoryGrades;
+    // Categories are interned as dense IDs by the gradebook's category table; weights are indexed by category ID
+    private double[] categoryWeights;
+    private boolean[] hasCategoryWeight;
+    private int weightsVersion;
+    
+    // Per-student category grades and cached weighted averages, indexed by position;
+    // category grades of students loaded from a binary file are read on first use
+    private GradeSlots[] studentCategoryGrades;
+    private double[] cachedWeightedAverages;
+    private int[] cachedWeightsVersions;
+    
+    // Ranking by weighted average, rebuilt lazily after a weight changes
+    private RankingIndex weightedRanking;
+    private int weightedRankingVersion;
+    
+    // Students per weighted letter grade and each student's letter index,
+    // recounted lazily after a weight changes
+    private int[] weightedLetterCounts;
+    private byte[] weightedLetters;
+    private int weightedLettersVersion;
     
     /**
      * Constructor for WeightedGradebook
      * @param dataFile The filename to save/load data from
      */
     public WeightedGradebook(String dataFile) {
-        super(dataFile);
-        this.categoryWeights = new HashMap<>();
-        this.studentCategoryGrades = new HashMap<>();
+        this(dataFile, GradebookListener.NONE);
+    }
+    
+    /**
+     * Constructor for WeightedGradebook that reports its events to a listener
+     * @param dataFile The filename to save/load data from
+     * @param listener Receives added students, grades, saves and errors
+     */
+    public WeightedGradebook(String dataFile, GradebookListener listener) {
+        super(dataFile, listener);
+        this.categoryWeights = new double[0];
+        this.hasCategoryWeight = new boolean[0];
+        this.weightsVersion = 1;
+        this.studentCategoryGrades = new GradeSlots[0];
+        this.cachedWeightedAverages = new double[0];
+        this.cachedWeightsVersions = new int[0];
+        this.weightedLetterCounts = new int[Student.LETTER_GRADES.length];
+        this.weightedLetters = new byte[0];
         
-        // Set default category weights
+        // Set default category weights, then any weights saved in the data file
         setDefaultCategoryWeights();
+        applySavedCategoryWeights();
+        
+        // Students loaded by the superclass are ranked on first use
+        this.weightedRanking = new RankingIndex();
+        this.weightedRankingVersion = 0;
     }
     
     /**
      * Set default category weights
      */
     private void setDefaultCategoryWeights() {
-        categoryWeights.put("Homework", 0.30);
-        categoryWeights.put("Tests", 0.50);
-        categoryWeights.put("Projects", 0.20);
+        putCategoryWeight("Homework", 0.30);
+        putCategoryWeight("Tests", 0.50);
+        putCategoryWeight("Projects", 0.20);
+    }
+    
+    /**
+     * Use the category weights read from the data file, if it had any
+     */
+    private void applySavedCategoryWeights() {
+        SymbolTable categoryTable = getCategoryTable();
+        for (int category = 0; category < categoryTable.size(); category++) {
+            double weight = super.getSavedCategoryWeight(category);
+            if (!Double.isNaN(weight)) {
+                putCategoryWeight(categoryTable.nameOf(category), weight);
+            }
+        }
+    }
+    
+    @Override
+    protected void onDataLoaded() {
+        // Skipped while the superclass constructor loads the data file
+        if (categoryWeights == null) {
+            return;
+        }
+        applySavedCategoryWeights();
+    }
+    
+    @Override
+    double getSavedCategoryWeight(int category) {
+        if (categoryWeights == null || category >= hasCategoryWeight.length || !hasCategoryWeight[category]) {
+            return Double.NaN;
+        }
+        return categoryWeights[category];
     }
     
     /**
@@ -40,62 +107,143 @@ public class WeightedGradebook extends Gradebook {
      * @param grade The grade to add (0-100)
      * @return true if grade was added successfully, false if student not found
      */
-    public boolean addGrade(int id, String category, double grade) {
-        Student student = findStudentById(id);
-        if (student == null) {
-            System.out.println("Student with ID " + id + " not found!");
+    public synchronized boolean addGrade(int id, String category, double grade) {
+        int position = getPositionOf(id);
+        if (position < 0) {
+            getListener().studentNotFound(id);
             return false;
         }
+        Student student = getStudentAt(position);
         
-        // Initialize student category grades if not exists
-        if (!studentCategoryGrades.containsKey(id)) {
-            studentCategoryGrades.put(id, new HashMap<>());
+        if (grade < 0 || grade > 100) {
+            // Rejected by the student, so keep it out of the category too
+            student.addGrade(grade);
+            return false;
         }
         
-        // Initialize category if not exists
-        if (!studentCategoryGrades.get(id).containsKey(category)) {
-            studentCategoryGrades.get(id).put(category, new ArrayList<>());
+        applyCategoryGrade(position, category, grade);
+        if (getJournal() != null) {
+            getJournal().logCategoryGrade(id, category, grade);
         }
         
-        // Add grade to category
-        studentCategoryGrades.get(id).get(category).add(grade);
-        
-        // Also add to overall grades
-        student.addGrade(grade);
+        getListener().gradeAdded(student, category, grade);
+        return true;
+    }
+    
+    /**
+     * Add a valid grade to a student's category and overall grades
+     * @param position The student's position in the gradebook
+     * @param category The category name
+     * @param grade The grade to add (0-100)
+     */
+    private void applyCategoryGrade(int position, String category, double grade) {
+        int categoryId = getCategoryTable().intern(category);
+        categorySlotsFor(position).add(categoryId, grade);
         
-        System.out.println("Grade " + grade + " added for " + student.getName() + " in " + category);
+        // Also counts towards the overall grades (this invalidates the cached weighted average)
+        getStudentAt(position).addGradeForCategory(categoryId, grade);
+    }
+    
+    /**
+     * Add many category grades at once, without printing
+     * @param ids Student ID of each grade
+     * @param categories Category ID of each grade from getCategoryTable(), or GradeStore.NONE
+     * @param grades The grades (0-100)
+     * @param count Number of grades to read from the arrays
+     * @return Bit i is set if grade i was added
+     */
+    public BitSet addCategoryGrades(int[] ids, int[] categories, double[] grades, int count) {
+        return addGrades(new GradeBatch(ids, null, categories, grades, count));
+    }
+    
+    @Override
+    GradeSlots getCategorySlots(int position) {
+        return categorySlotsAt(position, false);
+    }
+    
+    @Override
+    double getWeightedAverageAt(int position) {
+        return weightedAverageAt(position);
+    }
+    
+    @Override
+    boolean supportsCategories() {
         return true;
     }
     
+    @Override
+    void addCategoryTotal(int position, int category, double grade) {
+        categorySlotsFor(position).add(category, grade);
+    }
+    
+    @Override
+    synchronized void applyGrade(int position, String label, double grade) {
+        applyCategoryGrade(position, label, grade);
+        if (getJournal() != null) {
+            getJournal().logCategoryGrade(getStudentAt(position).getId(), label, grade);
+        }
+    }
+    
+    @Override
+    void replayCategoryGrade(int id, String category, double grade) {
+        int position = getPositionOf(id);
+        if (position >= 0 && grade >= 0 && grade <= 100) {
+            applyCategoryGrade(position, category, grade);
+        }
+    }
+    
+    @Override
+    void replayCategoryWeight(String category, double weight) {
+        putCategoryWeight(category, weight);
+    }
+    
     /**
      * Calculate weighted average for a student
      * @param id Student's ID
      * @return Weighted average grade
      */
     public double getWeightedAverage(int id) {
-        Student student = findStudentById(id);
-        if (student == null) {
-            return 0.0;
+        int position = getPositionOf(id);
+        return position >= 0 ? weightedAverageAt(position) : 0.0;
+    }
+    
+    /**
+     * Get the weighted average of a student, from the cache when the weights have not changed
+     * @param position The student's position in the gradebook
+     * @return Weighted average grade
+     */
+    private double weightedAverageAt(int position) {
+        if (position < cachedWeightsVersions.length && cachedWeightsVersions[position] == weightsVersion) {
+            return cachedWeightedAverages[position];
         }
         
-        if (!studentCategoryGrades.containsKey(id)) {
+        double weightedAverage = computeWeightedAverage(position);
+        ensureStudentCapacity(position);
+        cachedWeightedAverages[position] = weightedAverage;
+        cachedWeightsVersions[position] = weightsVersion;
+        return weightedAverage;
+    }
+    
+    /**
+     * Compute a student's weighted average from the category sums
+     * @param position The student's position in the gradebook
+     * @return Weighted average grade
+     */
+    private double computeWeightedAverage(int position) {
+        Student student = getStudentAt(position);
+        GradeSlots slots = categorySlotsAt(position, false);
+        if (slots == null) {
             return student.getAverage(); // Fall back to regular average
         }
         
         double weightedSum = 0.0;
         double totalWeight = 0.0;
         
-        Map<String, ArrayList<Double>> studentGrades = studentCategoryGrades.get(id);
-        
-        for (Map.Entry<String, ArrayList<Double>> entry : studentGrades.entrySet()) {
-            String category = entry.getKey();
-            ArrayList<Double> grades = entry.getValue();
-            
-            if (!grades.isEmpty() && categoryWeights.containsKey(category)) {
-                double categoryAverage = grades.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-                double weight = categoryWeights.get(category);
-                
-                weightedSum += categoryAverage * weight;
+        for (int i = 0; i < slots.getSlotCount(); i++) {
+            int category = slots.getSymbolAt(i);
+            if (category < hasCategoryWeight.length && hasCategoryWeight[category]) {
+                double weight = categoryWeights[category];
+                weightedSum += slots.getAverage(category) * weight;
                 totalWeight += weight;
             }
         }
@@ -109,12 +257,7 @@ public class WeightedGradebook extends Gradebook {
      * @return Weighted letter grade
      */
     public String getWeightedLetterGrade(int id) {
-        double weightedAverage = getWeightedAverage(id);
-        if (weightedAverage >= 90) return "A";
-        else if (weightedAverage >= 80) return "B";
-        else if (weightedAverage >= 70) return "C";
-        else if (weightedAverage >= 60) return "D";
-        else return "F";
+        return Student.letterGradeFor(getWeightedAverage(id));
     }
     
     /**
@@ -122,13 +265,35 @@ public class WeightedGradebook extends Gradebook {
      * @param category The category name
      * @param weight The weight (0.0 to 1.0)
      */
-    public void setCategoryWeight(String category, double weight) {
+    public synchronized void setCategoryWeight(String category, double weight) {
         if (weight >= 0.0 && weight <= 1.0) {
-            categoryWeights.put(category, weight);
-            System.out.println("Category weight for " + category + " set to " + (weight * 100) + "%");
+            putCategoryWeight(category, weight);
+            if (getJournal() != null) {
+                getJournal().logCategoryWeight(category, weight);
+            }
+            getListener().categoryWeightSet(category, weight);
         } else {
-            System.out.println("Weight must be between 0.0 and 1.0");
+            getListener().invalidCategoryWeight(category, weight);
+        }
+    }
+    
+    /**
+     * Store a category weight, invalidate every cached weighted average and
+     * count the change for autosave
+     * @param category The category name
+     * @param weight The weight (0.0 to 1.0)
+     */
+    private void putCategoryWeight(String category, double weight) {
+        int categoryId = getCategoryTable().intern(category);
+        if (categoryId >= categoryWeights.length) {
+            int capacity = Math.max(categoryId + 1, categoryWeights.length * 2);
+            categoryWeights = Arrays.copyOf(categoryWeights, capacity);
+            hasCategoryWeight = Arrays.copyOf(hasCategoryWeight, capacity);
         }
+        categoryWeights[categoryId] = weight;
+        hasCategoryWeight[categoryId] = true;
+        weightsVersion++;
+        countChange();
     }
     
     /**
@@ -136,8 +301,10 @@ public class WeightedGradebook extends Gradebook {
      */
     public void displayCategoryWeights() {
         System.out.println("\n=== CATEGORY WEIGHTS ===");
-        for (Map.Entry<String, Double> entry : categoryWeights.entrySet()) {
-            System.out.printf("%s: %.1f%%\n", entry.getKey(), entry.getValue() * 100);
+        for (int category = 0; category < hasCategoryWeight.length; category++) {
+            if (hasCategoryWeight[category]) {
+                System.out.printf("%s: %.1f%%\n", getCategoryTable().nameOf(category), categoryWeights[category] * 100);
+            }
         }
         System.out.println("=======================\n");
     }
@@ -145,27 +312,292 @@ public class WeightedGradebook extends Gradebook {
     /**
      * Display weighted student rankings
      */
-    public void rankStudentsByWeightedAverage() {
-        ArrayList<Student> allStudents = getAllStudents();
-        if (allStudents.isEmpty()) {
+    public synchronized void rankStudentsByWeightedAverage() {
+        if (getStudentCount() == 0) {
             System.out.println("No students to rank.");
             return;
         }
         
-        // Sort by weighted average
-        allStudents.sort((s1, s2) -> Double.compare(getWeightedAverage(s2.getId()), getWeightedAverage(s1.getId())));
+        RankingIndex ranking = getWeightedRanking();
+        int[] order = ranking.range(0, ranking.size());
         
         System.out.println("\n=== STUDENT RANKINGS (by weighted average) ===");
-        for (int i = 0; i < allStudents.size(); i++) {
-            Student student = allStudents.get(i);
-            double weightedAvg = getWeightedAverage(student.getId());
-            System.out.println(String.format("%d. %s (ID: %d) - Weighted Average: %.2f (%s)",
-                    i + 1, student.getName(), student.getId(), 
-                    weightedAvg, getWeightedLetterGrade(student.getId())));
-        }
+        getParallelRanking().printLines(order.length, (i, line) -> {
+            Student student = getStudentAt(order[i]);
+            double weightedAvg = ranking.getScore(order[i]);
+            line.append(String.format("%d. %s (ID: %d) - Weighted Average: %.2f (%s)",
+                    i + 1, student.getName(), student.getId(),
+                    weightedAvg, Student.letterGradeFor(weightedAvg)));
+        }, System.out);
         System.out.println("=============================================\n");
     }
     
+    /**
+     * Get the students with the highest weighted averages
+     * @param k Number of students to return
+     * @return Up to k students, highest weighted average first
+     */
+    public synchronized ArrayList<Student> getTopStudentsByWeightedAverage(int k) {
+        int[] positions = getWeightedRanking().range(0, k);
+        ArrayList<Student> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(getStudentAt(position));
+        }
+        return result;
+    }
+    
+    /**
+     * Get a student's rank by weighted average
+     * @param id Student's ID
+     * @return Rank starting at 1 for the highest weighted average, or -1 if not found
+     */
+    public synchronized int getWeightedRankOf(int id) {
+        int position = getPositionOf(id);
+        return position >= 0 ? getWeightedRanking().rankOf(position) + 1 : -1;
+    }
+    
+    @Override
+    RankingIndex rankingFor(GradeMetric metric) {
+        switch (metric.getKind()) {
+            case WEIGHTED_AVERAGE:
+                return getWeightedRanking();
+            case CATEGORY:
+                if (getStudentCount() > 0) {
+                    ensureStudentCapacity(getStudentCount() - 1); // chunks only write their own slots
+                }
+                return null;
+            default:
+                return super.rankingFor(metric);
+        }
+    }
+    
+    @Override
+    double metricValue(GradeMetric metric, int symbol, int position) {
+        if (metric.getKind() != GradeMetric.Kind.CATEGORY) {
+            return super.metricValue(metric, symbol, position);
+        }
+        GradeSlots slots = categorySlotsAt(position, false);
+        return slots != null && slots.contains(symbol) ? slots.getAverage(symbol) : Double.NaN;
+    }
+    
+    /**
+     * Get the weighted ranking, rebuilding it if the weights changed; the
+     * caller holds the lock, as the rebuild grows the per-student arrays
+     * @return The up-to-date weighted ranking
+     */
+    private RankingIndex getWeightedRanking() {
+        if (weightedRankingVersion != weightsVersion) {
+            // Weighted averages are computed in chunks, then ranked with one sort
+            int studentCount = getStudentCount();
+            double[] scores = new double[studentCount];
+            if (studentCount > 0) {
+                ensureStudentCapacity(studentCount - 1); // chunks only write their own slots
+            }
+            ParallelRanking parallel = getParallelRanking();
+            parallel.forEachChunk(studentCount, (chunk, from, to) -> {
+                for (int position = from; position < to; position++) {
+                    scores[position] = weightedAverageAt(position);
+                }
+            });
+            weightedRanking.rebuild(scores, parallel.rankOrder(scores, studentCount), studentCount);
+            weightedRankingVersion = weightsVersion;
+        }
+        return weightedRanking;
+    }
+    
+    /**
+     * Get the number of students with each weighted letter grade
+     * O(1) while the weights are unchanged; the first call after a weight
+     * changes recounts every student.
+     * @return Students per letter grade, indexed like Student.LETTER_GRADES
+     */
+    public synchronized int[] getWeightedLetterGradeCounts() {
+        if (weightedLettersVersion != weightsVersion) {
+            // Letters are found in chunks that only write their own slots, then totalled
+            int studentCount = getStudentCount();
+            if (studentCount > 0) {
+                ensureStudentCapacity(studentCount - 1);
+            }
+            ParallelRanking parallel = getParallelRanking();
+            int[][] partials = new int[parallel.chunkCount(studentCount)][Student.LETTER_GRADES.length];
+            parallel.forEachChunk(studentCount, (chunk, from, to) -> {
+                for (int position = from; position < to; position++) {
+                    int letter = Student.letterIndexFor(weightedAverageAt(position));
+                    weightedLetters[position] = (byte) letter;
+                    partials[chunk][letter]++;
+                }
+            });
+            Arrays.fill(weightedLetterCounts, 0);
+            for (int[] counts : partials) {
+                for (int i = 0; i < counts.length; i++) {
+                    weightedLetterCounts[i] += counts[i];
+                }
+            }
+            weightedLettersVersion = weightsVersion;
+        }
+        return weightedLetterCounts.clone();
+    }
+    
+    /**
+     * Display the letter-grade distribution by weighted average
+     */
+    public void displayWeightedGradeDistribution() {
+        if (getStudentCount() == 0) {
+            System.out.println("No students to analyze.");
+            return;
+        }
+        printLetterDistribution(System.out, "\n=== GRADE DISTRIBUTION (by weighted average) ===",
+                getWeightedLetterGradeCounts());
+    }
+    
+    /**
+     * Read everything the comprehensive grade report shows in one pass over the students
+     * @return The report model, ready to print
+     */
+    public synchronized GradeReport buildReport() {
+        int studentCount = getStudentCount();
+        double[] averages = new double[studentCount];
+        double[] weightedAverages = new double[studentCount];
+        GradeSlots[] categorySlots = new GradeSlots[studentCount];
+        if (studentCount > 0) {
+            ensureStudentCapacity(studentCount - 1); // chunks only write their own slots
+        }
+        ParallelRanking parallel = getParallelRanking();
+        parallel.forEachChunk(studentCount, (chunk, from, to) -> {
+            getGradeStore().computeAverages(averages, from, to);
+            for (int position = from; position < to; position++) {
+                weightedAverages[position] = weightedAverageAt(position);
+                categorySlots[position] = categorySlotsAt(position, false);
+            }
+        });
+        
+        // The weighted ranking reuses the weighted averages just cached
+        int[] weightedRankOrder = getWeightedRanking().range(0, studentCount);
+        return new GradeReport(this, categoryWeights.clone(), hasCategoryWeight.clone(),
+                averages, weightedAverages, categorySlots, weightedRankOrder);
+    }
+    
+    /**
+     * Move a student to the bucket of its current weighted letter grade
+     * @param position The student's position in the gradebook
+     * @param isNew true if the student is not counted yet
+     */
+    private void updateWeightedLetter(int position, boolean isNew) {
+        int letter = Student.letterIndexFor(weightedAverageAt(position));
+        if (isNew) {
+            weightedLetterCounts[letter]++;
+        } else if (weightedLetters[position] != letter) {
+            weightedLetterCounts[weightedLetters[position]]--;
+            weightedLetterCounts[letter]++;
+        }
+        weightedLetters[position] = (byte) letter;
+    }
+    
+    @Override
+    protected void onStudentsCleared() {
+        // Skipped while the superclass constructor loads the data file
+        if (categoryWeights == null) {
+            return;
+        }
+        studentCategoryGrades = new GradeSlots[0];
+        cachedWeightedAverages = new double[0];
+        cachedWeightsVersions = new int[0];
+        weightedLetters = new byte[0];
+        weightedRankingVersion = 0;
+        weightedLettersVersion = 0;
+    }
+    
+    @Override
+    protected void onStudentAdded(int position) {
+        if (categoryWeights == null) {
+            return;
+        }
+        if (weightedLettersVersion == weightsVersion) {
+            ensureStudentCapacity(position);
+            updateWeightedLetter(position, true);
+        }
+        if (weightedRankingVersion == weightsVersion) {
+            weightedRanking.add(position, getWeightedAverage(getStudentAt(position).getId()));
+        }
+    }
+    
+    @Override
+    protected void onStudentGradesChanged(int position) {
+        if (categoryWeights == null) {
+            return;
+        }
+        if (position < cachedWeightsVersions.length) {
+            cachedWeightsVersions[position] = 0;
+        }
+        if (weightedLettersVersion == weightsVersion) {
+            updateWeightedLetter(position, false);
+        }
+        if (weightedRankingVersion == weightsVersion) {
+            weightedRanking.update(position, getWeightedAverage(getStudentAt(position).getId()));
+        }
+    }
+    
+    /**
+     * Get a student's category slots, creating them on first use
+     * @param position The student's position in the gradebook
+     * @return The student's category grades
+     */
+    private GradeSlots categorySlotsFor(int position) {
+        return categorySlotsAt(position, true);
+    }
+    
+    /**
+     * Get a student's category slots, reading saved ones from the data file on first use
+     * @param position The student's position in the gradebook
+     * @param create true to create empty slots for a student without any
+     * @return The student's category grades, or null if there are none and create is false
+     */
+    private GradeSlots categorySlotsAt(int position, boolean create) {
+        if (position < studentCategoryGrades.length && studentCategoryGrades[position] != null) {
+            return studentCategoryGrades[position];
+        }
+        
+        int storePosition = getStudentAt(position).getStorePosition();
+        GradeSlots slots;
+        if (getGradeStore().isSaved(storePosition)) {
+            slots = getGradeStore().loadCategorySlots(storePosition);
+        } else if (create) {
+            slots = new GradeSlots(true);
+        } else {
+            return null;
+        }
+        ensureStudentCapacity(position);
+        studentCategoryGrades[position] = slots;
+        return slots;
+    }
+    
+    /**
+     * Grow the per-student arrays to cover a position
+     * @param position The student's position in the gradebook
+     */
+    private void ensureStudentCapacity(int position) {
+        if (position >= studentCategoryGrades.length) {
+            int capacity = Math.max(Math.max(position + 1, getStudentCount()), studentCategoryGrades.length * 2);
+            studentCategoryGrades = Arrays.copyOf(studentCategoryGrades, capacity);
+            cachedWeightedAverages = Arrays.copyOf(cachedWeightedAverages, capacity);
+            cachedWeightsVersions = Arrays.copyOf(cachedWeightsVersions, capacity);
+            weightedLetters = Arrays.copyOf(weightedLetters, capacity);
+        }
+    }
+    
+    /**
+     * Get a student's category slots if the student has any category grades
+     * @param id Student's ID
+     * @return The category slots, or null if there are none
+     */
+    private GradeSlots findCategorySlots(int id) {
+        int position = getPositionOf(id);
+        if (position < 0) {
+            return null;
+        }
+        return categorySlotsAt(position, false);
+    }
+    
     /**
      * Display detailed student information with weighted grades
      */
@@ -181,18 +613,23 @@ public class WeightedGradebook extends Gradebook {
         System.out.printf("Regular Average: %.2f (%s)\n", student.getAverage(), student.getLetterGrade());
         System.out.printf("Weighted Average: %.2f (%s)\n", getWeightedAverage(id), getWeightedLetterGrade(id));
         
-        if (studentCategoryGrades.containsKey(id)) {
+        GradeSlots slots = findCategorySlots(id);
+        if (slots != null && slots.getSlotCount() > 0) {
             System.out.println("\nCategory Breakdown:");
-            Map<String, ArrayList<Double>> studentGrades = studentCategoryGrades.get(id);
-            for (Map.Entry<String, ArrayList<Double>> entry : studentGrades.entrySet()) {
-                String category = entry.getKey();
-                ArrayList<Double> grades = entry.getValue();
-                double categoryAvg = grades.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-                double weight = categoryWeights.getOrDefault(category, 0.0);
+            for (int i = 0; i < slots.getSlotCount(); i++) {
+                int category = slots.getSymbolAt(i);
+                double weight = category < hasCategoryWeight.length ? categoryWeights[category] : 0.0;
                 
-                System.out.printf("  %s (%.1f%%): %.2f - [%s]\n", 
-                    category, weight * 100, categoryAvg, 
-                    grades.toString().replace("[", "").replace("]", ""));
+                StringBuilder grades = new StringBuilder();
+                for (double grade : categoryGrades(student, slots, category)) {
+                    if (grades.length() > 0) {
+                        grades.append(", ");
+                    }
+                    grades.append(grade);
+                }
+                
+                System.out.printf("  %s (%.1f%%): %.2f - [%s]\n",
+                    getCategoryTable().nameOf(category), weight * 100, slots.getAverage(category), grades);
             }
         }
         System.out.println("=====================================\n");
@@ -204,10 +641,14 @@ public class WeightedGradebook extends Gradebook {
      * @return List of categories
      */
     public ArrayList<String> getStudentCategories(int id) {
-        if (studentCategoryGrades.containsKey(id)) {
-            return new ArrayList<>(studentCategoryGrades.get(id).keySet());
+        ArrayList<String> categories = new ArrayList<>();
+        GradeSlots slots = findCategorySlots(id);
+        if (slots != null) {
+            for (int i = 0; i < slots.getSlotCount(); i++) {
+                categories.add(getCategoryTable().nameOf(slots.getSymbolAt(i)));
+            }
         }
-        return new ArrayList<>();
+        return categories;
     }
     
     /**
@@ -217,11 +658,28 @@ public class WeightedGradebook extends Gradebook {
      * @return List of grades for the category
      */
     public ArrayList<Double> getCategoryGrades(int id, String category) {
-        if (studentCategoryGrades.containsKey(id) && 
-            studentCategoryGrades.get(id).containsKey(category)) {
-            return new ArrayList<>(studentCategoryGrades.get(id).get(category));
+        ArrayList<Double> grades = new ArrayList<>();
+        GradeSlots slots = findCategorySlots(id);
+        if (slots != null) {
+            int categoryId = getCategoryTable().lookup(category);
+            if (slots.contains(categoryId)) {
+                for (double grade : categoryGrades(findStudentById(id), slots, categoryId)) {
+                    grades.add(grade);
+                }
+            }
         }
-        return new ArrayList<>();
+        return grades;
+    }
+    
+    /**
+     * Read a student's grades for one category from the grade store
+     * @param student The student
+     * @param slots The student's category slots
+     * @param category The category ID
+     * @return Grades in the order they were added
+     */
+    private double[] categoryGrades(Student student, GradeSlots slots, int category) {
+        return getGradeStore().getCategoryGrades(student.getStorePosition(), category, slots.getCount(category));
     }
     
     /**
@@ -231,10 +689,10 @@ public class WeightedGradebook extends Gradebook {
      * @return Average grade for the category
      */
     public double getCategoryAverage(int id, String category) {
-        ArrayList<Double> grades = getCategoryGrades(id, category);
-        if (grades.isEmpty()) {
+        GradeSlots slots = findCategorySlots(id);
+        if (slots == null) {
             return 0.0;
         }
-        return grades.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
+        return slots.getAverage(getCategoryTable().lookup(category));
     }
 }
@@ -73,8 +73,8 @@ Projects
 
 echo ""
 echo "Demo completed! Check the generated data files:"
-echo "- gradebook_data.txt (basic app data)"
-echo "- enhanced_gradebook_data.txt (enhanced app data)"
+echo "- gradebook_data.gdb (basic app data)"
+echo "- enhanced_gradebook_data.gdb (enhanced app data)"
 echo ""
 echo "You can also run the applications interactively:"
 echo "- java GradebookApp (basic version)"